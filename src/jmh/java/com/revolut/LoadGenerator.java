@@ -0,0 +1,314 @@
+package com.revolut;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the HTTP service with an open-loop stream of transactions and reports what it sustained. Transactions are
+ * sent on schedule whether or not earlier ones have finished, and latency runs from the time a transaction was due, so
+ * a slow service shows as latency instead of as a slower send rate. Completion comes from /transaction/await.
+ * <p>
+ * Arguments are {@code name=value} pairs. The load options and their defaults are {@code url} (empty, which starts
+ * {@link Main} in this JVM), {@code accounts=1000}, {@code rate=2000} per second, {@code seconds=30},
+ * {@code zipf=1.1} for the skew of the account choice, {@code connections=16} for sending and as many for awaiting,
+ * and {@code mix=10,10,80} for the percent of deposits, withdrawals and transfers. Any other pair is set as a
+ * system property before the service starts, for example {@code accounts.backend=PACKED} or
+ * {@code journal.dir=/tmp/journal}.
+ * <p>
+ * The total balance is checked before and after the run with one point-in-time read of every account, the latter only
+ * once every accepted transaction is finished or rejected, so it is never taken with a transfer half applied.
+ */
+public class LoadGenerator {
+
+    private static final TypeReference<List<Account>> accountListType = new TypeReference<List<Account>>() {};
+    private static final TypeReference<List<String>> stringListType = new TypeReference<List<String>>() {};
+    private static final TypeReference<Map<String, Account>> accountMapType = new TypeReference<Map<String, Account>>() {};
+    private static final TypeReference<Map<String, TransactionStatus>> statusMapType = new TypeReference<Map<String, TransactionStatus>>() {};
+    private static final long INITIAL_BALANCE = 1_000_000_000L;
+    private static final long MAX_AMOUNT = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MoneyModule());
+    private final Map<String, String> options;
+    private final String url;
+    private final CloseableHttpClient client;
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.url = options.getOrDefault("url", "http://localhost:4567");
+        int connections = intOption("connections", 16);
+        this.client = HttpClients.custom().setMaxConnTotal(connections * 2).setMaxConnPerRoute(connections * 2).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args){
+            int separator = arg.indexOf('=');
+            if(separator < 0){
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        List<String> loadOptions = Arrays.asList("url", "accounts", "rate", "seconds", "zipf", "connections", "mix");
+        options.forEach((name, value) -> {
+            if(!loadOptions.contains(name)){
+                System.setProperty(name, value);
+            }
+        });
+        if(!options.containsKey("url")){
+            Main.main(null);
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        int accountCount = intOption("accounts", 1000);
+        int rate = intOption("rate", 2000);
+        int seconds = intOption("seconds", 30);
+        double skew = Double.parseDouble(options.getOrDefault("zipf", "1.1"));
+        int[] mix = Arrays.stream(options.getOrDefault("mix", "10,10,80").split(",")).mapToInt(Integer::parseInt).toArray();
+
+        List<String> accountNumbers = createAccounts(accountCount);
+        long initialTotal = totalBalance(accountNumbers);
+        ZipfSampler sampler = new ZipfSampler(accountCount, skew);
+
+        int planned = rate * seconds;
+        long[] latencies = new long[planned];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger unfinished = new AtomicInteger();
+        Map<String, Transaction> pending = new ConcurrentHashMap<>();
+        AtomicLong expectedChange = new AtomicLong();
+        AtomicLong lastCompletion = new AtomicLong();
+        ExecutorService senders = Executors.newFixedThreadPool(intOption("connections", 16));
+        ExecutorService awaiters = Executors.newFixedThreadPool(intOption("connections", 16));
+
+        System.out.printf("Sending %d transactions/s for %d s over %d accounts, zipf %.2f, mix %s%n", rate, seconds, accountCount, skew, Arrays.toString(mix));
+        long start = System.nanoTime();
+        int sent = 0;
+        while(sent < planned){
+            long now = System.nanoTime();
+            int due = (int) Math.min(planned, (now - start) * rate / TimeUnit.SECONDS.toNanos(1));
+            if(due > sent){
+                List<Transaction> batch = new ArrayList<>(due - sent);
+                for(int index = sent; index < due; index++){
+                    batch.add(randomTransaction(accountNumbers, sampler, mix));
+                }
+                long dueAt = start + sent * TimeUnit.SECONDS.toNanos(1) / rate;
+                int offset = sent;
+                senders.execute(() -> {
+                    try {
+                        List<String> ids = post("/transaction/new", batch, stringListType);
+                        awaiters.execute(() -> awaitCompletion(batch, ids, dueAt, offset, latencies, completed, rejected, unfinished, pending, expectedChange, lastCompletion));
+                    } catch (IOException e) {
+                        unfinished.addAndGet(batch.size());
+                        System.out.printf("Request failed: %s%n", e);
+                    }
+                });
+                sent = due;
+            } else {
+                TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.MILLISECONDS.toNanos(1), start + (sent + 1) * TimeUnit.SECONDS.toNanos(1) / rate - now));
+            }
+        }
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.MINUTES);
+        awaiters.shutdown();
+        awaiters.awaitTermination(5, TimeUnit.MINUTES);
+
+        int unsettled = settle(pending, expectedChange);
+        long finalTotal = totalBalance(accountNumbers);
+        report(planned, completed.get(), rejected.get(), unfinished.get(), latencies, lastCompletion.get() - start);
+        boolean preserved = finalTotal == initialTotal + expectedChange.get();
+        System.out.printf("Total balance %s: expected %d, found %d%s%n", preserved ? "preserved" : "NOT preserved", initialTotal + expectedChange.get(), finalTotal,
+                unsettled == 0 ? "" : ", with " + unsettled + " transactions still unfinished");
+        client.close();
+    }
+
+    private void awaitCompletion(List<Transaction> batch, List<String> ids, long dueAt, int offset, long[] latencies, AtomicInteger completed,
+                                 AtomicInteger rejected, AtomicInteger unfinished, Map<String, Transaction> pending, AtomicLong expectedChange,
+                                 AtomicLong lastCompletion) {
+        try {
+            Map<String, TransactionStatus> statuses = post("/transaction/await", ids, statusMapType);
+            long finishedAt = System.nanoTime();
+            lastCompletion.accumulateAndGet(finishedAt, Math::max);
+            for(int index = 0; index < ids.size(); index++){
+                TransactionStatus status = statuses.get(ids.get(index));
+                if(status == TransactionStatus.POSTPONED || status == null){
+                    unfinished.incrementAndGet();
+                    if(status == TransactionStatus.POSTPONED){
+                        pending.put(ids.get(index), batch.get(index));
+                    }
+                    continue;
+                }
+                latencies[offset + index] = finishedAt - dueAt;
+                completed.incrementAndGet();
+                if(status == TransactionStatus.REJECTED){
+                    rejected.incrementAndGet();
+                } else {
+                    expectedChange.addAndGet(balanceChange(batch.get(index)));
+                }
+            }
+        } catch (IOException e) {
+            unfinished.addAndGet(batch.size());
+            System.out.printf("Request failed: %s%n", e);
+        }
+    }
+
+    /**
+     * Waits for the transactions that were still postponed when their await timed out, so the total is checked only once
+     * nothing changes it any more, and counts in the change of the ones that finished. Returns how many never did.
+     */
+    private int settle(Map<String, Transaction> pending, AtomicLong expectedChange) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while(!pending.isEmpty() && System.nanoTime() < deadline){
+            Map<String, TransactionStatus> statuses = post("/transaction/await", new ArrayList<>(pending.keySet()), statusMapType);
+            statuses.forEach((id, status) -> {
+                if(status != TransactionStatus.POSTPONED){
+                    Transaction transaction = pending.remove(id);
+                    if(status == TransactionStatus.FINISHED){
+                        expectedChange.addAndGet(balanceChange(transaction));
+                    }
+                }
+            });
+        }
+        return pending.size();
+    }
+
+    private static long balanceChange(Transaction transaction) {
+        switch (transaction.getTransactionType()) {
+            case DEPOSIT:
+                return transaction.getAmount();
+            case WITHDRAWAL:
+                return -transaction.getAmount();
+            default:
+                return 0;
+        }
+    }
+
+    private static void report(int planned, int completed, int rejected, int unfinished, long[] latencies, long elapsedNanos) {
+        long[] finished = Arrays.stream(latencies).filter(latency -> latency > 0).sorted().toArray();
+        System.out.printf("Planned %d, completed %d (%d rejected), unfinished %d%n", planned, completed, rejected, unfinished);
+        System.out.printf("Sustained %.0f transactions/s%n", completed * 1e9 / Math.max(1, elapsedNanos));
+        if(finished.length == 0){
+            return;
+        }
+        System.out.printf("Latency ms from due to finished: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                percentile(finished, 50), percentile(finished, 90), percentile(finished, 99), percentile(finished, 99.9), finished[finished.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private Transaction randomTransaction(List<String> accountNumbers, ZipfSampler sampler, int[] mix) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(mix[0] + mix[1] + mix[2]);
+        Transaction transaction = new Transaction();
+        transaction.setAmount(1 + random.nextLong(MAX_AMOUNT));
+        transaction.setSender(accountNumbers.get(sampler.next(random)));
+        if(pick < mix[0]){
+            transaction.setTransactionType(TransactionType.DEPOSIT);
+        } else if(pick < mix[0] + mix[1]){
+            transaction.setTransactionType(TransactionType.WITHDRAWAL);
+        } else {
+            transaction.setTransactionType(TransactionType.TRANSFER);
+            String receiver;
+            while((receiver = accountNumbers.get(sampler.next(random))).equals(transaction.getSender()) && accountNumbers.size() > 1){
+            }
+            transaction.setReceiver(receiver);
+        }
+        return transaction;
+    }
+
+    private List<String> createAccounts(int count) throws Exception {
+        List<String> accountNumbers = new ArrayList<>();
+        List<Account> accounts = new ArrayList<>();
+        for(int index = 0; index < count; index++){
+            Account account = new Account();
+            account.setName("load " + index);
+            account.setEmail("load" + index + "@example.com");
+            accounts.add(account);
+        }
+        List<Transaction> deposits = new ArrayList<>();
+        for(Account account : post("/account/create", accounts, accountListType)){
+            accountNumbers.add(account.getAccountNumber());
+            Transaction deposit = new Transaction();
+            deposit.setTransactionType(TransactionType.DEPOSIT);
+            deposit.setSender(account.getAccountNumber());
+            deposit.setAmount(INITIAL_BALANCE);
+            deposits.add(deposit);
+        }
+        post("/transaction/await", post("/transaction/new", deposits, stringListType), statusMapType);
+        return accountNumbers;
+    }
+
+    private long totalBalance(List<String> accountNumbers) throws IOException {
+        return post("/account/get?snapshot=true", accountNumbers, accountMapType).values().stream().mapToLong(Account::getBalance).sum();
+    }
+
+    private <T> T post(String path, Object body, TypeReference<T> type) throws IOException {
+        HttpPost request = new HttpPost(url + path);
+        request.setEntity(new ByteArrayEntity(objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+        try (CloseableHttpResponse response = client.execute(request); InputStream content = response.getEntity().getContent()) {
+            if(response.getStatusLine().getStatusCode() != 200){
+                throw new IOException(path + " answered " + response.getStatusLine());
+            }
+            return objectMapper.readValue(content, type);
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Picks account indexes with probability falling as a power of their rank, so index 0 is the hottest account.
+     */
+    private static final class ZipfSampler {
+
+        private final double[] cumulative;
+
+        private ZipfSampler(int size, double exponent) {
+            cumulative = new double[size];
+            double sum = 0;
+            for(int rank = 0; rank < size; rank++){
+                sum += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            for(int rank = 0; rank < size; rank++){
+                cumulative[rank] /= sum;
+            }
+        }
+
+        private int next(ThreadLocalRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index < 0 ? -index - 1 : index);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.revolut.benchmark;
+
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Account;
+import com.revolut.repository.AccountBackend;
+import com.revolut.repository.AccountRepository;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads two accounts picked from a set of hot accounts, moves one unit between them and commits, the way the processor
+ * does for a transfer. The fewer the hot accounts, the more often threads collide, which the committed and conflicted
+ * counters show.
+ */
+@State(Scope.Benchmark)
+public class AccountCommitBenchmark {
+
+    @Param({"1", "16", "1024"})
+    public int hotAccounts;
+
+    @Param({"MAP", "PACKED"})
+    public AccountBackend backend;
+
+    private AccountRepository accountRepository;
+    private List<String> accountNumbers;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class CommitOutcome {
+        public long committed;
+        public long conflicted;
+    }
+
+    @Setup
+    public void setUp() {
+        accountRepository = backend.newRepository(new TimeOrderedIdGenerator(0));
+        List<Account> accounts = new ArrayList<>();
+        for(int index = 0; index < hotAccounts; index++){
+            Account account = new Account();
+            account.setName("hot " + index);
+            account.setEmail("hot" + index + "@example.com");
+            accounts.add(account);
+        }
+        accountNumbers = new ArrayList<>();
+        for(Account account : accountRepository.create(accounts)){
+            accountNumbers.add(account.getAccountNumber());
+        }
+    }
+
+    @Benchmark
+    public boolean readAndCommit(CommitOutcome outcome) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> pair = new ArrayList<>(2);
+        int first = random.nextInt(hotAccounts);
+        pair.add(accountNumbers.get(first));
+        if(hotAccounts > 1){
+            pair.add(accountNumbers.get((first + 1 + random.nextInt(hotAccounts - 1)) % hotAccounts));
+        }
+        Map<String, Account> accounts = accountRepository.getAccounts(pair);
+        Account from = accounts.get(pair.get(0));
+        Account to = accounts.get(pair.get(pair.size() - 1));
+        from.setBalance(from.getBalance() - 1);
+        to.setBalance(to.getBalance() + 1);
+        boolean committed = accountRepository.commit(new ArrayList<>(accounts.values()));
+        if(committed){
+            outcome.committed++;
+        } else {
+            outcome.conflicted++;
+        }
+        return committed;
+    }
+}
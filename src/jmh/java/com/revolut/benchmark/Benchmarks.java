@@ -0,0 +1,43 @@
+package com.revolut.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks matching the first argument, all of them by default, at 1, 2, 4 and so on up to the number of
+ * threads in the second argument, the number of processors by default. Each run reports throughput and sampled
+ * latency with allocation per operation from the GC profiler.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : Benchmarks.class.getPackage().getName() + ".*Benchmark";
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; ; threads = Math.min(threads * 2, maxThreads)){
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(1))
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+            if(threads >= maxThreads){
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.revolut.benchmark;
+
+import com.revolut.TransactionProcessor;
+import com.revolut.WaitStrategy;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountBackend;
+import com.revolut.repository.AccountRepository;
+import com.revolut.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Submits a batch of transactions of one type between random accounts to a running processor and waits until every one
+ * is finished or rejected, so a result covers queueing, partition hand-offs, optimistic commits and the balance changes.
+ */
+@State(Scope.Benchmark)
+public class ProcessingBenchmark {
+
+    private static final int BATCH = 100;
+    private static final int ACCOUNTS = 1024;
+    private static final long INITIAL_BALANCE = 1L << 40;
+
+    @Param({"DEPOSIT", "WITHDRAWAL", "TRANSFER"})
+    public TransactionType type;
+
+    @Param({"MAP", "PACKED"})
+    public AccountBackend backend;
+
+    private TransactionRepository transactionRepository;
+    private TransactionProcessor processor;
+    private List<String> accountNumbers;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        AccountRepository accountRepository = backend.newRepository(new TimeOrderedIdGenerator(0));
+        transactionRepository = new TransactionRepository(Runtime.getRuntime().availableProcessors());
+        processor = new TransactionProcessor(accountRepository, transactionRepository, WaitStrategy.LOW_LATENCY);
+        processor.start();
+        List<Account> accounts = new ArrayList<>();
+        for(int index = 0; index < ACCOUNTS; index++){
+            Account account = new Account();
+            account.setName("account " + index);
+            account.setEmail("account" + index + "@example.com");
+            accounts.add(account);
+        }
+        accountNumbers = new ArrayList<>();
+        List<Transaction> deposits = new ArrayList<>();
+        for(Account account : accountRepository.create(accounts)){
+            accountNumbers.add(account.getAccountNumber());
+            deposits.add(transaction(TransactionType.DEPOSIT, account.getAccountNumber(), null, INITIAL_BALANCE));
+        }
+        transactionRepository.awaitTransactionStatuses(transactionRepository.addTransactions(deposits), 60_000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        processor.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Map<String, TransactionStatus> processBatch() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Transaction> batch = new ArrayList<>(BATCH);
+        for(int index = 0; index < BATCH; index++){
+            int sender = random.nextInt(ACCOUNTS);
+            String receiver = type == TransactionType.TRANSFER ? accountNumbers.get((sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS) : null;
+            batch.add(transaction(type, accountNumbers.get(sender), receiver, 1));
+        }
+        return transactionRepository.awaitTransactionStatuses(transactionRepository.addTransactions(batch), 60_000);
+    }
+
+    private static Transaction transaction(TransactionType type, String sender, String receiver, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(type);
+        transaction.setSender(sender);
+        transaction.setReceiver(receiver);
+        transaction.setAmount(amount);
+        return transaction;
+    }
+}
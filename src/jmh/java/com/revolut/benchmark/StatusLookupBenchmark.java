@@ -0,0 +1,61 @@
+package com.revolut.benchmark;
+
+import com.revolut.id.Ids;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Looks up the status of a random finished transaction, and of an id that was never handed out.
+ */
+@State(Scope.Benchmark)
+public class StatusLookupBenchmark {
+
+    private static final int BATCH = 10_000;
+
+    @Param({"100000", "1000000"})
+    public int transactions;
+
+    private TransactionRepository transactionRepository;
+    private List<String> ids;
+
+    @Setup
+    public void setUp() {
+        transactionRepository = new TransactionRepository(1);
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(TransactionType.DEPOSIT);
+        transaction.setSender("0000000000000001");
+        transaction.setAmount(1);
+        List<Transaction> batch = Collections.nCopies(BATCH, transaction);
+        ids = new ArrayList<>(transactions);
+        while(ids.size() < transactions){
+            ids.addAll(transactionRepository.addTransactions(batch));
+            Transaction next;
+            while((next = transactionRepository.getNextTransaction(0)) != null){
+                transactionRepository.finishTransaction(next, true, false);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, TransactionStatus> lookupFinished() {
+        return transactionRepository.getTransactionStatuses(Collections.singletonList(ids.get(ThreadLocalRandom.current().nextInt(ids.size()))));
+    }
+
+    @Benchmark
+    public Map<String, TransactionStatus> lookupUnknown() {
+        return transactionRepository.getTransactionStatuses(Collections.singletonList(Ids.format(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE))));
+    }
+}
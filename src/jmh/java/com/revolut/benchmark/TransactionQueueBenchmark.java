@@ -0,0 +1,45 @@
+package com.revolut.benchmark;
+
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Queues a transaction, takes the next one from the same partition and finishes it, so the queue stays short and the
+ * cost is the enqueue, dequeue and status changes without any account work. A fresh repository per iteration keeps the
+ * status index from growing across the whole run.
+ */
+@State(Scope.Benchmark)
+public class TransactionQueueBenchmark {
+
+    private TransactionRepository transactionRepository;
+    private List<Transaction> deposit;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        transactionRepository = new TransactionRepository(1);
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(TransactionType.DEPOSIT);
+        transaction.setSender("0000000000000001");
+        transaction.setAmount(1);
+        deposit = Collections.singletonList(transaction);
+    }
+
+    @Benchmark
+    public Transaction enqueueAndDequeue() {
+        transactionRepository.addTransactions(deposit);
+        Transaction next = transactionRepository.getNextTransaction(0);
+        if(next != null){
+            transactionRepository.finishTransaction(next, true, false);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,65 @@
+package com.revolut;
+
+import com.revolut.model.LedgerEntry;
+import com.revolut.model.LedgerPage;
+import com.revolut.repository.AccountLedger;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Pages through an account's ledger oldest entry first, starting at a cursor or at a time. A cursor is the encoded
+ * epoch of the ledger and sequence of the next entry, so paging on with it picks up entries written after the last
+ * page was read. Once that ledger is gone, dropped or lost with a restart, see {@link AccountLedger}, its cursors are
+ * refused instead of paging over a later ledger's entries, and the client starts again from a time.
+ */
+class AccountHistory {
+
+    private final AccountLedger ledger;
+
+    AccountHistory(AccountLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    /**
+     * Starts at the cursor if there is one, otherwise at the first entry written at or after {@code sinceMillis}.
+     */
+    LedgerPage page(String accountNumber, String cursor, long sinceMillis, int limit) {
+        long epoch;
+        List<LedgerEntry> entries;
+        if(cursor != null){
+            ByteBuffer decoded = decode(cursor);
+            epoch = decoded.getLong();
+            entries = ledger.read(accountNumber, epoch, decoded.getLong(), limit);
+            if(entries == null){
+                throw new IllegalArgumentException("Cursor " + cursor + " is from a ledger that is no longer kept");
+            }
+        } else {
+            // Read again if the ledger was replaced between finding the sequence and reading from it.
+            do {
+                epoch = ledger.epochOf(accountNumber);
+                entries = ledger.read(accountNumber, epoch, ledger.sequenceAt(accountNumber, sinceMillis), limit);
+            } while(entries == null);
+        }
+        LedgerPage page = new LedgerPage();
+        page.setEntries(entries);
+        page.setNext(entries.size() < limit ? null : encode(epoch, entries.get(entries.size() - 1).getSequence() + 1));
+        return page;
+    }
+
+    private static String encode(long epoch, long sequence) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(2 * Long.BYTES).putLong(epoch).putLong(sequence).array());
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} for anything that is not a cursor this class handed out.
+     */
+    private static ByteBuffer decode(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if(bytes.length != 2 * Long.BYTES || ByteBuffer.wrap(bytes).getLong(Long.BYTES) < 0){
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,87 @@
+package com.revolut;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revolut.model.Account;
+import com.revolut.model.AccountPage;
+import com.revolut.repository.AccountRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Writes accounts either a page at a time, with a cursor to continue from, or all at once as a JSON array streamed in
+ * chunks straight to the response. Neither builds the full account list or the full response in memory.
+ * A cursor is the encoded position of the next account in creation order, which does not change as accounts are added.
+ */
+class AccountPages {
+
+    private static final int STREAM_CHUNK_SIZE = 1024;
+
+    private final ObjectMapper objectMapper;
+    private final AccountRepository accountRepository;
+
+    AccountPages(ObjectMapper objectMapper, AccountRepository accountRepository) {
+        this.objectMapper = objectMapper;
+        this.accountRepository = accountRepository;
+    }
+
+    AccountPage page(String cursor, int limit) {
+        int position = cursor == null ? 0 : decode(cursor);
+        List<Account> accounts = new ArrayList<>(limit);
+        int next = accountRepository.scan(position, limit, accounts::add);
+        AccountPage page = new AccountPage();
+        page.setAccounts(accounts);
+        page.setNext(accounts.size() < limit ? null : encode(next));
+        return page;
+    }
+
+    void writeAll(OutputStream output) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            int position = 0;
+            int next;
+            try {
+                while((next = accountRepository.scan(position, STREAM_CHUNK_SIZE, account -> write(generator, account))) != position){
+                    position = next;
+                    generator.flush();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void write(JsonGenerator generator, Account account) {
+        try {
+            generator.writeObject(account);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String encode(int position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt(position).array());
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} for anything that is not a cursor this class handed out.
+     */
+    private static int decode(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if(bytes.length != Integer.BYTES){
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        int position = ByteBuffer.wrap(bytes).getInt();
+        if(position < 0){
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,71 @@
+package com.revolut;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads a JSON array element by element and hands the elements on in batches of at most {@code batchSize}, writing
+ * each batch's results to a JSON array in the response before reading the next. Only one batch is held per request,
+ * so memory does not grow with the size of the upload and the first batch is processed while the rest is still
+ * arriving. Batches rather than single elements keep one journal flush covering many elements.
+ */
+class BulkIngest {
+
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    BulkIngest(ObjectMapper objectMapper, int batchSize) {
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of elements read. If the input turns out to be malformed after some batches were handled,
+     * those stay handled and the response is cut short where the error was found.
+     */
+    <T, R> int ingest(InputStream input, OutputStream output, Class<T> type, Function<List<T>, List<R>> handler) throws IOException {
+        int count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(input);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            if(parser.nextToken() != JsonToken.START_ARRAY){
+                throw new JsonParseException(parser, "Expected a JSON array");
+            }
+            generator.writeStartArray();
+            List<T> batch = new ArrayList<>(batchSize);
+            JsonToken token;
+            while((token = parser.nextToken()) != JsonToken.END_ARRAY){
+                if(token == null){
+                    throw new JsonParseException(parser, "Unexpected end of JSON array");
+                }
+                batch.add(objectMapper.readValue(parser, type));
+                count++;
+                if(batch.size() == batchSize){
+                    write(generator, handler.apply(batch));
+                    batch.clear();
+                }
+            }
+            if(!batch.isEmpty()){
+                write(generator, handler.apply(batch));
+            }
+            generator.writeEndArray();
+        }
+        return count;
+    }
+
+    private <R> void write(JsonGenerator generator, List<R> results) throws IOException {
+        for(R result : results){
+            generator.writeObject(result);
+        }
+        generator.flush();
+    }
+}
@@ -0,0 +1,68 @@
+package com.revolut;
+
+import com.revolut.model.Transaction;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects credits to one hot account so the worker that owns it can apply them with a single commit. Each worker adds
+ * to its own stripe, so workers crediting the account at the same time do not contend with each other.
+ * <p>
+ * Once closed, a credit that was not collected yet is taken back and {@link #add(Transaction, int)} returns false.
+ * The worker that closes it drains it afterwards, so every credit either gets drained or is taken back.
+ */
+class CreditCombiner {
+
+    private final String accountNumber;
+    private final int owner;
+    private final Queue<Transaction>[] stripes;
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    CreditCombiner(String accountNumber, int owner, int stripeCount) {
+        this.accountNumber = accountNumber;
+        this.owner = owner;
+        this.stripes = new Queue[stripeCount];
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            stripes[stripe] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    String getAccountNumber() {
+        return accountNumber;
+    }
+
+    int getOwner() {
+        return owner;
+    }
+
+    boolean add(Transaction credit, int stripe) {
+        stripes[stripe].add(credit);
+        return !closed || !stripes[stripe].remove(credit);
+    }
+
+    /**
+     * Returns true for the first caller since the last {@link #drainTo(List)}, which has to queue it to the owner.
+     */
+    boolean markQueued() {
+        return !queued.get() && queued.compareAndSet(false, true);
+    }
+
+    void drainTo(List<Transaction> credits) {
+        queued.set(false);
+        for (Queue<Transaction> stripe : stripes) {
+            Transaction credit;
+            while ((credit = stripe.poll()) != null) {
+                credits.add(credit);
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,115 @@
+package com.revolut;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the accounts that receive the most credits. One credit in {@link #SAMPLE_EVERY} is counted, and at the end of
+ * every window the busiest accounts above the threshold become hot, up to {@code maxHot} of them. A hot account stays
+ * hot while it keeps at least half the threshold, so one quiet window does not flip it back and forth. Windows end by
+ * the clock rather than by the next sample, so an account that stops being credited cools down all the same.
+ */
+class HotAccounts {
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SAMPLE_EVERY = 16;
+    private static final int MAX_TRACKED = 10_000;
+
+    private final long hotSamples;
+    private final int maxHot;
+    private final AtomicLong windowEnd = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+    private volatile Map<String, LongAdder> samples = new ConcurrentHashMap<>();
+    private volatile Set<String> hot = Collections.emptySet();
+    private volatile long generation;
+
+    /**
+     * An account becomes hot once it is credited {@code creditsPerSecond} times a second. Zero for either argument
+     * turns detection off.
+     */
+    HotAccounts(long creditsPerSecond, int maxHot) {
+        this.hotSamples = Math.max(1, creditsPerSecond * TimeUnit.NANOSECONDS.toMillis(WINDOW_NANOS) / 1000 / SAMPLE_EVERY);
+        this.maxHot = creditsPerSecond > 0 ? maxHot : 0;
+    }
+
+    /**
+     * Counts a credit to the account and returns whether the account is hot.
+     */
+    boolean recordCredit(String accountNumber) {
+        if(maxHot > 0 && ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0){
+            sample(accountNumber);
+        }
+        return hot.contains(accountNumber);
+    }
+
+    boolean isHot(String accountNumber) {
+        return hot.contains(accountNumber);
+    }
+
+    /**
+     * Changes every time the hot accounts are worked out again, which is done first if the window is over.
+     */
+    long generation() {
+        if(maxHot > 0){
+            rollIfOver(System.nanoTime());
+        }
+        return generation;
+    }
+
+    private void sample(String accountNumber) {
+        rollIfOver(System.nanoTime());
+        Map<String, LongAdder> current = samples;
+        LongAdder count = current.get(accountNumber);
+        if(count == null){
+            if(current.size() >= MAX_TRACKED){
+                return;
+            }
+            count = current.computeIfAbsent(accountNumber, ignored -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private void rollIfOver(long now) {
+        long end = windowEnd.get();
+        if(now - end >= 0 && windowEnd.compareAndSet(end, now + WINDOW_NANOS)){
+            roll(now - end >= WINDOW_NANOS);
+        }
+    }
+
+    /**
+     * A window that is over by a whole window more was followed by one without a single sample, so nothing stays hot.
+     */
+    private void roll(boolean quietSince) {
+        Map<String, LongAdder> finished = samples;
+        samples = new ConcurrentHashMap<>();
+        if(quietSince){
+            hot = Collections.emptySet();
+            generation++;
+            return;
+        }
+        Set<String> previous = hot;
+        List<Map.Entry<String, Long>> busiest = new ArrayList<>();
+        for(Map.Entry<String, LongAdder> entry : finished.entrySet()){
+            long count = entry.getValue().sum();
+            if(count >= hotSamples || (previous.contains(entry.getKey()) && count * 2 >= hotSamples)){
+                busiest.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), count));
+            }
+        }
+        busiest.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+        Set<String> next = new HashSet<>();
+        for(int index = 0; index < busiest.size() && index < maxHot; index++){
+            next.add(busiest.get(index).getKey());
+        }
+        hot = next;
+        generation++;
+    }
+}
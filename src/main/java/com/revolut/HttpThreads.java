@@ -0,0 +1,5 @@
+package com.revolut;
+
+public enum HttpThreads {
+    PLATFORM,VIRTUAL
+}
@@ -2,57 +2,271 @@ package com.revolut;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.ingest.BinaryIngestServer;
+import com.revolut.journal.FlushPolicy;
+import com.revolut.journal.Journal;
+import com.revolut.journal.JournalReplay;
+import com.revolut.journal.MappedJournal;
+import com.revolut.logging.Logger;
+import com.revolut.metrics.Histogram;
+import com.revolut.metrics.Metrics;
 import com.revolut.model.Account;
 import com.revolut.model.Transaction;
 import com.revolut.model.TransactionStatus;
+import com.revolut.repository.AccountBackend;
+import com.revolut.repository.AccountLedger;
 import com.revolut.repository.AccountRepository;
+import com.revolut.repository.AdmissionControl;
+import com.revolut.repository.AdmissionPolicy;
+import com.revolut.repository.IdempotencyCache;
+import com.revolut.repository.JournaledAccountRepository;
+import com.revolut.repository.RetentionPolicy;
+import com.revolut.repository.TransactionArchive;
 import com.revolut.repository.TransactionRepository;
 import spark.Request;
+import spark.Route;
+import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import static spark.Spark.get;
-import static spark.Spark.post;
+import static spark.Spark.halt;
 
 public class Main {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static final AccountRepository accountRepository = new AccountRepository();
-    private static final TransactionRepository transactionRepository = new TransactionRepository();
-    private static final TransactionProcessor processor = new TransactionProcessor(accountRepository,transactionRepository);
+    private static final Logger log = Logger.getLogger(Main.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MoneyModule());
+    private static final AccountBackend accountBackend = AccountBackend.valueOf(System.getProperty("accounts.backend", AccountBackend.MAP.name()));
+    private static final MappedJournal mappedJournal = openJournal();
+    private static final Journal journal = mappedJournal == null ? Journal.NONE : mappedJournal;
+    private static final int nodeId = Integer.getInteger("ids.nodeId", 0);
+    private static final AccountRepository backendRepository = accountBackend.newRepository(new TimeOrderedIdGenerator(nodeId));
+    private static final AccountRepository accountRepository = mappedJournal == null ? backendRepository : new JournaledAccountRepository(backendRepository, journal);
+    private static final int partitionCount = Runtime.getRuntime().availableProcessors();
+    private static final TransactionRepository transactionRepository = new TransactionRepository(partitionCount, journal, new TimeOrderedIdGenerator(nodeId));
+    private static final WaitStrategy waitStrategy = WaitStrategy.valueOf(System.getProperty("processor.waitStrategy", WaitStrategy.LOW_CPU.name()));
+    private static final BulkIngest bulkIngest = new BulkIngest(objectMapper, Integer.getInteger("ingest.batchSize", 256));
+    private static final AccountPages accountPages = new AccountPages(objectMapper, accountRepository);
+    private static final int maxPageSize = Integer.getInteger("accounts.maxPageSize", 10_000);
+    private static final AccountLedger ledger = new AccountLedger(Integer.getInteger("ledger.maxEntriesPerAccount", 10_000),
+            Integer.getInteger("ledger.maxAccounts", 100_000));
+    private static final AccountHistory accountHistory = new AccountHistory(ledger);
+    private static final HttpThreads httpThreads = HttpThreads.valueOf(System.getProperty("http.threads", HttpThreads.PLATFORM.name()));
+    private static final int retryAfterSeconds = Integer.getInteger("transactions.retryAfterSeconds", 1);
+    private static final long maxAwaitMillis = Long.getLong("transactions.maxAwaitMillis", 30_000);
+    private static final TransactionProcessor processor = new TransactionProcessor(accountRepository,transactionRepository,waitStrategy,
+            Long.getLong("processor.hotCreditsPerSecond", 1_000), Integer.getInteger("processor.maxHotAccounts", 64));
 
     public static void main(String[] args) {
-        TypeReference<List<Account>> accountListType = new TypeReference<List<Account>>(){};
+        configureHttpThreads();
+        RetentionPolicy retentionPolicy = new RetentionPolicy(Integer.getInteger("transactions.retainCount", 1_000_000), Long.getLong("transactions.retainMillis", 600_000));
+        transactionRepository.startRetention(retentionPolicy, openArchive());
+        AdmissionControl admission = new AdmissionControl(Integer.getInteger("transactions.maxWaiting", 1_000_000),
+                AdmissionPolicy.valueOf(System.getProperty("transactions.admissionPolicy", AdmissionPolicy.REJECT.name())),
+                Long.getLong("transactions.maxBlockMillis", 100));
+        transactionRepository.limitAdmission(admission);
+        IdempotencyCache idempotencyCache = new IdempotencyCache(Integer.getInteger("transactions.idempotencyKeys", 100_000),
+                Long.getLong("transactions.idempotencyMillis", 600_000));
+        transactionRepository.rememberIdempotencyKeys(idempotencyCache);
+        processor.keepLedger(ledger);
+        JournalReplay replay = new JournalReplay();
+        journal.replay(replay);
+        replay.restore(accountRepository, transactionRepository);
+        if(mappedJournal != null){
+            mappedJournal.startSnapshots(Long.getLong("journal.snapshotIntervalMillis", 60_000), processor, accountRepository, transactionRepository);
+        }
+
         TypeReference<List<String>> stringListType = new TypeReference<List<String>>(){};
-        TypeReference<List<Transaction>> transactionListType = new TypeReference<List<Transaction>>(){};
 
         post("/account/create", (req, res) -> {
-            List<Account> accounts = convertPayload(req,accountListType);
-            List<Account> created = accountRepository.create(accounts);
-            return objectMapper.writeValueAsString(created);
+            bulkIngest.ingest(requestBody(req), res.raw().getOutputStream(), Account.class, accountRepository::create);
+            return "";
         });
         get("/account/all",(req,res) -> {
-           List<Account> allAccounts = accountRepository.all();
-           return objectMapper.writeValueAsString(allAccounts);
+            String limit = req.queryParams("limit");
+            if(limit == null){
+                accountPages.writeAll(res.raw().getOutputStream());
+                return "";
+            }
+            try {
+                int pageSize = Math.min(maxPageSize, Math.max(1, Integer.parseInt(limit)));
+                return objectMapper.writeValueAsString(accountPages.page(req.queryParams("cursor"), pageSize));
+            } catch (IllegalArgumentException e) {
+                throw halt(400, e.getMessage());
+            }
         });
         post("/account/get",(req,res) -> {
             List<String> accountsNumbers = convertPayload(req,stringListType);
-            Map<String,Account> accounts = accountRepository.getAccounts(accountsNumbers,false);
+            Map<String,Account> accounts = accountRepository.readAccounts(accountsNumbers, Boolean.parseBoolean(req.queryParams("snapshot")));
+            if(accounts == null){
+                res.header("Retry-After", String.valueOf(retryAfterSeconds));
+                throw halt(503, "Accounts kept changing while being read");
+            }
             return objectMapper.writeValueAsString(accounts);
         });
+        get("/account/history",(req,res) -> {
+            String accountNumber = req.queryParams("account");
+            Map<String,Account> accounts = accountNumber == null ? Collections.emptyMap() : accountRepository.readAccounts(Collections.singletonList(accountNumber), false);
+            if(accounts == null){
+                res.header("Retry-After", String.valueOf(retryAfterSeconds));
+                throw halt(503, "Account kept changing while being read");
+            }
+            if(accounts.isEmpty()){
+                throw halt(404, "Unknown account " + accountNumber);
+            }
+            try {
+                int pageSize = Math.min(maxPageSize, Math.max(1, Integer.parseInt(req.queryParamOrDefault("limit", String.valueOf(maxPageSize)))));
+                long sinceMillis = Long.parseLong(req.queryParamOrDefault("since", "0"));
+                return objectMapper.writeValueAsString(accountHistory.page(accountNumber, req.queryParams("cursor"), sinceMillis, pageSize));
+            } catch (IllegalArgumentException e) {
+                throw halt(400, e.getMessage());
+            }
+        });
         post("/transaction/new", (req,res) -> {
-            List<Transaction> transactions = convertPayload(req,transactionListType);
-            List<String> transactionNumbers = transactionRepository.addTransactions(transactions);
-            return objectMapper.writeValueAsString(transactionNumbers);
+            bulkIngest.ingest(requestBody(req), res.raw().getOutputStream(), Transaction.class, transactions -> {
+                List<String> ids = transactionRepository.addTransactions(transactions);
+                // Only the first batch is handled before anything is flushed, so only a refusal there changes the status.
+                if(!res.raw().isCommitted() && !ids.isEmpty() && ids.get(0) == null){
+                    res.status(503);
+                    res.header("Retry-After", String.valueOf(retryAfterSeconds));
+                }
+                return ids;
+            });
+            return "";
         });
         post("/transaction/get", (req,res) -> {
             List<String> transactionNumbers = convertPayload(req,stringListType);
             Map<String, TransactionStatus> transactions = transactionRepository.getTransactionStatuses(transactionNumbers);
             return objectMapper.writeValueAsString(transactions);
         });
+        post("/transaction/await", (req,res) -> {
+            List<String> transactionNumbers = convertPayload(req,stringListType);
+            long timeoutMillis = Math.min(maxAwaitMillis, Math.max(0, Long.parseLong(req.queryParamOrDefault("timeoutMillis", String.valueOf(maxAwaitMillis)))));
+            Map<String, TransactionStatus> transactions = transactionRepository.awaitTransactionStatuses(transactionNumbers, timeoutMillis);
+            return objectMapper.writeValueAsString(transactions);
+        });
+        get("/metrics", (req,res) -> {
+            res.type("text/plain; version=0.0.4");
+            return Metrics.scrape();
+        });
+        for(int partition = 0; partition < partitionCount; partition++){
+            int waitingPartition = partition;
+            Metrics.gauge("transactions_waiting", "Transactions queued for processing, by partition", "partition", String.valueOf(partition),
+                    () -> transactionRepository.getWaitingTransactionsSize(waitingPartition));
+        }
         processor.start();
+        startBinaryIngest();
+        log.info("Processing transactions in %s partitions with wait strategy %s and %s accounts", partitionCount, waitStrategy, accountBackend);
+        log.info("Keeping at most %s in memory", retentionPolicy);
+        log.info("Admitting at most %s", admission);
+        log.info("Remembering idempotency keys up to %s", idempotencyCache);
+        log.info("Keeping %s", ledger);
+    }
+
+    /**
+     * Has to run before the first route is mapped, which is when Spark builds its server.
+     */
+    private static void configureHttpThreads() {
+        if(httpThreads == HttpThreads.VIRTUAL){
+            EmbeddedServers.add(EmbeddedServers.defaultIdentifier(), new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool()));
+            log.info("Serving requests on virtual threads");
+            return;
+        }
+        int maxThreads = Integer.getInteger("http.maxThreads", 200);
+        Spark.threadPool(maxThreads, Integer.getInteger("http.minThreads", 8), Integer.getInteger("http.idleTimeoutMillis", 60_000));
+        log.info("Serving requests on up to %s platform threads", maxThreads);
+    }
+
+    private static void post(String path, Route route) {
+        Spark.post(path, timed("POST " + path, route));
+    }
+
+    private static void get(String path, Route route) {
+        Spark.get(path, timed("GET " + path, route));
+    }
+
+    private static Route timed(String endpoint, Route route) {
+        Histogram latency = Metrics.histogram("http_request_seconds", "Time spent handling requests, by endpoint", "endpoint", endpoint);
+        return (req, res) -> {
+            long start = System.nanoTime();
+            try {
+                return route.handle(req, res);
+            } finally {
+                latency.recordNanos(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private static MappedJournal openJournal() {
+        String directory = System.getProperty("journal.dir");
+        if(directory == null){
+            return null;
+        }
+        try {
+            MappedJournal mappedJournal = new MappedJournal(Paths.get(directory), Integer.getInteger("journal.segmentSize", 64 << 20),
+                    FlushPolicy.valueOf(System.getProperty("journal.flushPolicy", FlushPolicy.GROUP.name())), Long.getLong("journal.flushIntervalMillis", 10));
+            Runtime.getRuntime().addShutdownHook(new Thread(mappedJournal::close, "journal-shutdown"));
+            return mappedJournal;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void startBinaryIngest() {
+        Integer port = Integer.getInteger("ingest.binaryPort");
+        if(port == null){
+            return;
+        }
+        try {
+            BinaryIngestServer server = new BinaryIngestServer(new InetSocketAddress(port), Integer.getInteger("ingest.maxFrameBytes", 1 << 20),
+                    Integer.getInteger("ingest.threads", Runtime.getRuntime().availableProcessors()), transactionRepository);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "binary-ingest-shutdown"));
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The archive in {@code transactions.archiveDir} is reopened by the next start. Without one it goes to a temporary
+     * directory and is deleted on shutdown.
+     */
+    private static TransactionArchive openArchive() {
+        try {
+            String directory = System.getProperty("transactions.archiveDir");
+            TransactionArchive archive = new TransactionArchive(directory == null ? Files.createTempDirectory("transactions") : Paths.get(directory));
+            Runnable shutdown = directory == null ? archive::discard : archive::close;
+            Runtime.getRuntime().addShutdownHook(new Thread(shutdown, "archive-shutdown"));
+            return archive;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Spark's request wrapper buffers the whole body so it can be read more than once. Bulk uploads are read once,
+     * as they arrive, from the request underneath.
+     */
+    private static InputStream requestBody(Request req) throws IOException {
+        ServletRequest raw = req.raw();
+        if(raw instanceof ServletRequestWrapper){
+            raw = ((ServletRequestWrapper) raw).getRequest();
+        }
+        return raw.getInputStream();
     }
 
     private static <T> T convertPayload(Request req, TypeReference<T> type) throws java.io.IOException {
@@ -0,0 +1,80 @@
+package com.revolut;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.revolut.model.Account;
+import com.revolut.model.LedgerEntry;
+import com.revolut.model.Money;
+import com.revolut.model.Transaction;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the {@code long} minor unit amounts of the model as JSON decimals, so the conversion happens
+ * only while a request or response is being mapped.
+ */
+class MoneyModule extends SimpleModule {
+
+    MoneyModule() {
+        super("MoneyModule");
+        setMixInAnnotation(Account.class, AccountMoney.class);
+        setMixInAnnotation(Transaction.class, TransactionMoney.class);
+        setMixInAnnotation(LedgerEntry.class, LedgerEntryMoney.class);
+    }
+
+    private abstract static class AccountMoney {
+
+        @JsonSerialize(using = MoneySerializer.class)
+        abstract long getBalance();
+
+        @JsonDeserialize(using = MoneyDeserializer.class)
+        abstract void setBalance(long balance);
+    }
+
+    private abstract static class TransactionMoney {
+
+        @JsonSerialize(using = MoneySerializer.class)
+        abstract long getAmount();
+
+        @JsonDeserialize(using = MoneyDeserializer.class)
+        abstract void setAmount(long amount);
+    }
+
+    private abstract static class LedgerEntryMoney {
+
+        @JsonSerialize(using = MoneySerializer.class)
+        abstract long getAmount();
+
+        @JsonDeserialize(using = MoneyDeserializer.class)
+        abstract void setAmount(long amount);
+
+        @JsonSerialize(using = MoneySerializer.class)
+        abstract long getBalance();
+
+        @JsonDeserialize(using = MoneyDeserializer.class)
+        abstract void setBalance(long balance);
+    }
+
+    private static class MoneySerializer extends JsonSerializer<Long> {
+
+        @Override
+        public void serialize(Long value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(Money.toDecimal(value));
+        }
+    }
+
+    private static class MoneyDeserializer extends JsonDeserializer<Long> {
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return Money.fromDecimal(parser.getDecimalValue());
+        }
+    }
+}
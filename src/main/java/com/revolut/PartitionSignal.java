@@ -0,0 +1,35 @@
+package com.revolut;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+class PartitionSignal {
+
+    private final AtomicBoolean signalled = new AtomicBoolean(false);
+    private volatile Thread waiter;
+
+    void signal() {
+        if (!signalled.get() && !signalled.getAndSet(true)) {
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    void await(WaitStrategy strategy) {
+        for (int spin = 0; spin < strategy.getSpins() && !signalled.get(); spin++) {
+            if ((spin & 0xFF) == 0xFF) {
+                Thread.yield();
+            }
+        }
+        if (!signalled.get()) {
+            waiter = Thread.currentThread();
+            while (!signalled.get() && !waiter.isInterrupted()) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+        }
+        signalled.set(false);
+    }
+}
@@ -1,66 +1,470 @@
 package com.revolut;
 
+import com.revolut.journal.Quiescence;
+import com.revolut.logging.Logger;
+import com.revolut.metrics.Counter;
+import com.revolut.metrics.KeyedCounter;
+import com.revolut.metrics.Metrics;
 import com.revolut.model.Account;
+import com.revolut.model.Money;
 import com.revolut.model.Transaction;
 import com.revolut.model.TransactionStatus;
 import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountLedger;
 import com.revolut.repository.AccountRepository;
 import com.revolut.repository.TransactionRepository;
 
-import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
-public class TransactionProcessor {
+/**
+ * Each account is owned by one partition and only that partition's worker changes it, so no account locks are taken.
+ * A transaction reads its accounts once and commits the new balances with a compare and set of their versions, which
+ * only fails if something else committed in between, in which case it is read and applied again.
+ * A transfer to another partition is handed off: the sender's worker debits, the receiver's worker credits and finishes it.
+ * While a handed off credit is in flight, debits of the receiving account are parked behind it instead of being retried.
+ * A credit that would overflow the receiver is handed back to the sender's worker, which returns the debit and rejects it.
+ * Credits to a {@link HotAccounts hot account} are not applied one by one. Every worker adds them to the account's
+ * {@link CreditCombiner} and the owning worker applies all that were collected with one commit, every
+ * {@value #COMBINE_INTERVAL} transactions, when its queue runs empty, and before it debits the account.
+ * Every committed change of a balance is recorded in the {@link AccountLedger} by the worker that owns the account.
+ * Outcomes are answered only once durable: every {@value #COMBINE_INTERVAL} transactions and at the end of each pass
+ * the worker waits for the journal to flush the finish records written so far and publishes them.
+ * Workers sleep on a {@link PartitionSignal} when their partition is empty and wake as soon as work is queued to it.
+ * A journal snapshot holds them still between passes, after the transfers in flight are done, see
+ * {@link #whileQuiescent(Runnable)}.
+ */
+public class TransactionProcessor implements Quiescence {
 
-    private final int coreSize = 8;
+    private static final Logger log = Logger.getLogger(TransactionProcessor.class);
+    private static final Counter handedOffCreditCount = Metrics.counter("processor_handoffs_total", "Transfers handed between partitions, by direction", "direction", "credit");
+    private static final Counter returnedDebitCount = Metrics.counter("processor_handoffs_total", "Transfers handed between partitions, by direction", "direction", "returned_debit");
+    private static final Counter combinedCreditCount = Metrics.counter("processor_combined_credits_total", "Credits to hot accounts applied together with others");
+    private static final Counter combinedCommitCount = Metrics.counter("processor_combined_commits_total", "Commits applying the collected credits of a hot account");
+    private static final int COMBINE_INTERVAL = 64;
+    private static final int RUNNING = 0;
+    private static final int DRAINING = 1;
+    private static final int STOPPED = 2;
+    private static final KeyedCounter parkedTransactionCount = Metrics.keyedCounter("processor_parked_total", "Transactions parked behind a credit in flight to their sender, by sender", "account");
+
+    private final int partitionCount;
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
-    private ScheduledExecutorService processor = Executors.newScheduledThreadPool(coreSize);
+    private final Queue<Transaction>[] handedOffCredits;
+    private final Queue<Transaction>[] returnedDebits;
+    private final Map<String, Integer> inFlightCredits = new ConcurrentHashMap<>();
+    private final Map<String, ArrayDeque<Transaction>>[] parkedTransactions;
+    private final PartitionSignal[] signals;
+    private final WaitStrategy waitStrategy;
+    private final HotAccounts hotAccounts;
+    private final Map<String, CreditCombiner> combiners = new ConcurrentHashMap<>();
+    private final Queue<CreditCombiner>[] combinedCredits;
+    private final long[] sweptGeneration;
+    private final AtomicIntegerArray inPass;
+    private volatile int pause = RUNNING;
+    private volatile boolean started;
+    private volatile AccountLedger ledger = new AccountLedger(10_000);
+    private ExecutorService processor;
 
     public TransactionProcessor(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        this(accountRepository, transactionRepository, WaitStrategy.LOW_CPU);
+    }
+
+    public TransactionProcessor(AccountRepository accountRepository, TransactionRepository transactionRepository, WaitStrategy waitStrategy) {
+        this(accountRepository, transactionRepository, waitStrategy, 1_000, 64);
+    }
+
+    /**
+     * An account is combined once it gets {@code hotCreditsPerSecond} credits a second, and at most
+     * {@code maxHotAccounts} are combined at a time. Zero for either turns combining off.
+     */
+    @SuppressWarnings("unchecked")
+    public TransactionProcessor(AccountRepository accountRepository, TransactionRepository transactionRepository, WaitStrategy waitStrategy,
+                                long hotCreditsPerSecond, int maxHotAccounts) {
         this.accountRepository = accountRepository;
         this.transactionRepository = transactionRepository;
+        this.waitStrategy = waitStrategy;
+        this.hotAccounts = new HotAccounts(hotCreditsPerSecond, maxHotAccounts);
+        this.partitionCount = transactionRepository.getPartitionCount();
+        this.handedOffCredits = new Queue[partitionCount];
+        this.returnedDebits = new Queue[partitionCount];
+        this.parkedTransactions = new Map[partitionCount];
+        this.signals = new PartitionSignal[partitionCount];
+        this.combinedCredits = new Queue[partitionCount];
+        this.sweptGeneration = new long[partitionCount];
+        this.inPass = new AtomicIntegerArray(partitionCount);
+        for (int partition = 0; partition < partitionCount; partition++) {
+            handedOffCredits[partition] = new ConcurrentLinkedQueue<>();
+            returnedDebits[partition] = new ConcurrentLinkedQueue<>();
+            parkedTransactions[partition] = new HashMap<>();
+            signals[partition] = new PartitionSignal();
+            combinedCredits[partition] = new ConcurrentLinkedQueue<>();
+        }
+        this.processor = Executors.newFixedThreadPool(partitionCount);
+    }
+
+    public void keepLedger(AccountLedger ledger) {
+        this.ledger = ledger;
     }
 
     public void start(){
-        processor.scheduleAtFixedRate(processTransaction(),0,10, TimeUnit.MILLISECONDS);
+        transactionRepository.onTransactionQueued(partition -> signals[partition].signal());
+        started = true;
+        for (int partition = 0; partition < partitionCount; partition++) {
+            processor.execute(runPartition(partition));
+        }
     }
 
-    private Runnable processTransaction() {
-        return () -> {
-            String threadName = Thread.currentThread().getName();
-            int numberOfItemsToProcess = transactionRepository.getWaitingTransactionsSize();
-            int itemsProcessed = 0;
-            if(numberOfItemsToProcess > 0) {
-                System.out.printf("Total items in queue = %d when thread %s is beginning\n", numberOfItemsToProcess, threadName);
+    public void stop(){
+        started = false;
+        processor.shutdownNow();
+    }
+
+    /**
+     * Workers stop taking new transactions and finish the credits and returned debits in flight. Once none is left and
+     * every worker is between passes they are held there, so no balance is half changed, until the action returns.
+     */
+    @Override
+    public synchronized void whileQuiescent(Runnable action) {
+        if(!started){
+            action.run();
+            return;
+        }
+        try {
+            do {
+                pause = DRAINING;
+                signalAll();
+                while(started && (!isDrained() || isAnyInPass())){
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+                pause = STOPPED;
+                while(started && isAnyInPass()){
+                    Thread.yield();
+                }
+            } while(started && !isDrained());
+            action.run();
+        } finally {
+            pause = RUNNING;
+            signalAll();
+        }
+    }
+
+    private boolean isDrained() {
+        for (int partition = 0; partition < partitionCount; partition++) {
+            if(!handedOffCredits[partition].isEmpty() || !returnedDebits[partition].isEmpty() || !combinedCredits[partition].isEmpty()){
+                return false;
+            }
+        }
+        return inFlightCredits.isEmpty();
+    }
+
+    private boolean isAnyInPass() {
+        for (int partition = 0; partition < partitionCount; partition++) {
+            if(inPass.get(partition) != 0){
+                return true;
             }
-            while(transactionRepository.getWaitingTransactionsSize() > 0){
-                Transaction nextTransaction = transactionRepository.getNextTransaction();
-                if(nextTransaction != null){
-                    System.out.printf("Processing transaction by id %s by thread %s\n",nextTransaction.getId(),threadName);
-
-                    List<String> accountsForTransaction = accountsForTransaction(nextTransaction);
-                    TransactionStatus status = processTransaction(nextTransaction, accountsForTransaction);
-                    if(status == TransactionStatus.REJECTED){
-                        transactionRepository.finishTransaction(nextTransaction,false, true);
-                        itemsProcessed++;
-                    } else if(status == TransactionStatus.POSTPONED){
-                        transactionRepository.finishTransaction(nextTransaction,false, false);
-                    } else{
-                        transactionRepository.finishTransaction(nextTransaction,true, false);
-                        itemsProcessed++;
+        }
+        return false;
+    }
+
+    private void signalAll() {
+        for (PartitionSignal signal : signals) {
+            signal.signal();
+        }
+    }
+
+    private Runnable runPartition(int partition) {
+        return () -> {
+            while(!Thread.currentThread().isInterrupted()){
+                // Marked before reading the pause, which whileQuiescent sets before reading the mark, so one of the two
+                // always sees the other.
+                inPass.set(partition, 1);
+                boolean stopped = pause == STOPPED;
+                try {
+                    if(!stopped){
+                        processPartition(partition);
                     }
+                } finally {
+                    inPass.set(partition, 0);
+                }
+                if(stopped || (pause != RUNNING || transactionRepository.getWaitingTransactionsSize(partition) <= 0) && handedOffCredits[partition].isEmpty()
+                        && returnedDebits[partition].isEmpty() && combinedCredits[partition].isEmpty()){
+                    signals[partition].await(waitStrategy);
                 }
             }
-            System.out.printf("Total items processed = %d by thread %s\n",itemsProcessed, threadName);
         };
     }
 
+    /**
+     * One pass over the work queued to the partition. Only the partition's worker calls it once started, tests call it
+     * directly to run partitions one step at a time.
+     */
+    void processPartition(int partition) {
+        int itemsProcessed = 0;
+        if(log.isDebugEnabled()) {
+            log.debug("Total items in queue = %d for partition %d when beginning", transactionRepository.getWaitingTransactionsSize(partition), partition);
+        }
+        itemsProcessed += processHandedOffCredits(partition) + processReturnedDebits(partition) + processCombinedCredits(partition);
+        int processed;
+        int sinceCombined = 0;
+        while((processed = processNextTransaction(partition)) >= 0){
+            itemsProcessed += processed + processHandedOffCredits(partition) + processReturnedDebits(partition);
+            if(++sinceCombined == COMBINE_INTERVAL){
+                itemsProcessed += processCombinedCredits(partition);
+                transactionRepository.publishDurableCompletions();
+                sinceCombined = 0;
+            }
+        }
+        itemsProcessed += processCombinedCredits(partition);
+        transactionRepository.publishDurableCompletions();
+        if(itemsProcessed > 0 && log.isDebugEnabled()) {
+            log.debug("Total items processed = %d in partition %d", itemsProcessed, partition);
+        }
+    }
+
+    /**
+     * Processes the next waiting transaction of the partition, or parks it, and returns how many transactions were
+     * completed by that, or -1 if none was waiting. Credits handed to the partition are left for the caller.
+     */
+    int processNextTransaction(int partition) {
+        if(pause != RUNNING){
+            return -1;
+        }
+        Transaction nextTransaction = transactionRepository.getNextTransaction(partition);
+        if(nextTransaction == null){
+            return -1;
+        }
+        if(log.isTraceEnabled()) {
+            log.trace("Processing transaction by id %s in partition %d", nextTransaction.getId(), partition);
+        }
+        if(parkIfHeldUp(nextTransaction, partition)){
+            log.debug("Parking transaction %s behind account %s", nextTransaction.getId(), nextTransaction.getSender());
+            return 0;
+        }
+        return processAndFinish(nextTransaction, partition);
+    }
+
+    private int processAndFinish(Transaction transaction, int partition) {
+        TransactionStatus status = processTransaction(transaction, partition);
+        if(status == TransactionStatus.REJECTED){
+            transactionRepository.finishTransaction(transaction,false, true);
+            return 1;
+        } else if(status == TransactionStatus.FINISHED){
+            transactionRepository.finishTransaction(transaction,true, false);
+            return 1;
+        }
+        return 0;
+    }
+
+    int processHandedOffCredits(int partition) {
+        int itemsProcessed = 0;
+        Transaction credit;
+        while((credit = handedOffCredits[partition].poll()) != null){
+            String receiver = credit.getReceiver();
+            Account receiverAccount;
+            boolean credited;
+            do {
+                receiverAccount = accountRepository.getAccounts(Collections.singletonList(receiver)).get(receiver);
+                credited = receiverAccount != null && handleDeposit(receiverAccount, credit.getAmount());
+            } while(credited && !accountRepository.commit(Collections.singletonList(receiverAccount)));
+            if(credited){
+                ledger.record(receiver, credit.getId(), credit.getAmount(), receiverAccount.getBalance());
+                transactionRepository.finishTransaction(credit, true, false);
+                itemsProcessed++;
+            } else {
+                log.debug("Unable to credit transaction %s to account %s, returning it to the sender", credit.getId(), receiver);
+                handOff(returnedDebits, credit, credit.getSender());
+                returnedDebitCount.increment();
+            }
+            itemsProcessed += completeInFlightCredit(receiver, partition);
+        }
+        return itemsProcessed;
+    }
+
+    private int processReturnedDebits(int partition) {
+        int itemsProcessed = 0;
+        Transaction returned;
+        while((returned = returnedDebits[partition].poll()) != null){
+            String sender = returned.getSender();
+            Account senderAccount;
+            boolean refunded;
+            do {
+                senderAccount = accountRepository.getAccounts(Collections.singletonList(sender)).get(sender);
+                refunded = handleDeposit(senderAccount, returned.getAmount());
+                if(!refunded){
+                    log.error("Unable to return the debit of transaction %s to account %s", returned.getId(), sender);
+                    break;
+                }
+            } while(!accountRepository.commit(Collections.singletonList(senderAccount)));
+            if(refunded){
+                ledger.record(sender, returned.getId(), returned.getAmount(), senderAccount.getBalance());
+            }
+            transactionRepository.finishTransaction(returned, false, true);
+            itemsProcessed++;
+            itemsProcessed += completeInFlightCredit(sender, partition);
+        }
+        return itemsProcessed;
+    }
+
+    private int processCombinedCredits(int partition) {
+        int itemsProcessed = sweepCooledCombiners(partition);
+        CreditCombiner combiner;
+        while((combiner = combinedCredits[partition].poll()) != null){
+            itemsProcessed += applyCombinedCredits(combiner);
+        }
+        return itemsProcessed;
+    }
+
+    /**
+     * Stops combining the accounts of this partition that are no longer hot, once every time they are worked out.
+     */
+    private int sweepCooledCombiners(int partition) {
+        long generation = hotAccounts.generation();
+        if(generation == sweptGeneration[partition]){
+            return 0;
+        }
+        sweptGeneration[partition] = generation;
+        int itemsProcessed = 0;
+        for(CreditCombiner combiner : combiners.values()){
+            if(combiner.getOwner() == partition && !hotAccounts.isHot(combiner.getAccountNumber())){
+                log.debug("Account %s is no longer hot, crediting it one by one", combiner.getAccountNumber());
+                combiner.close();
+                itemsProcessed += applyCombinedCredits(combiner);
+                combiners.remove(combiner.getAccountNumber(), combiner);
+            }
+        }
+        return itemsProcessed;
+    }
+
+    /**
+     * Applies every credit collected so far with one read and one commit. Deposits that would overflow the account are
+     * rejected and transfers are handed back to their sender's worker, the same as when crediting one by one.
+     */
+    private int applyCombinedCredits(CreditCombiner combiner) {
+        List<Transaction> credits = new ArrayList<>();
+        combiner.drainTo(credits);
+        if(credits.isEmpty()){
+            return 0;
+        }
+        String accountNumber = combiner.getAccountNumber();
+        List<Transaction> credited = new ArrayList<>();
+        List<Transaction> overflowed = new ArrayList<>();
+        long[] balances = new long[credits.size()];
+        Account account;
+        do {
+            credited.clear();
+            overflowed.clear();
+            account = accountRepository.getAccounts(Collections.singletonList(accountNumber)).get(accountNumber);
+            for(Transaction credit : credits){
+                if(account != null && handleDeposit(account, credit.getAmount())){
+                    balances[credited.size()] = account.getBalance();
+                    credited.add(credit);
+                } else {
+                    overflowed.add(credit);
+                }
+            }
+        } while(!credited.isEmpty() && !accountRepository.commit(Collections.singletonList(account)));
+        if(!credited.isEmpty()){
+            combinedCommitCount.increment();
+            combinedCreditCount.add(credited.size());
+        }
+        for(int index = 0; index < credited.size(); index++){
+            Transaction credit = credited.get(index);
+            ledger.record(accountNumber, credit.getId(), credit.getAmount(), balances[index]);
+            transactionRepository.finishTransaction(credit, true, false);
+        }
+        for(Transaction credit : overflowed){
+            if(credit.getTransactionType() == TransactionType.TRANSFER){
+                log.debug("Credit of transaction %s overflows account %s, returning it to the sender", credit.getId(), accountNumber);
+                handOff(returnedDebits, credit, credit.getSender());
+                returnedDebitCount.increment();
+            } else {
+                log.debug("Unable to deposit transaction %s to account %s, rejecting it", credit.getId(), accountNumber);
+                transactionRepository.finishTransaction(credit, false, true);
+            }
+        }
+        return credits.size();
+    }
+
+    /**
+     * Returns the combiner of the account if it is hot, after counting the credit towards finding hot accounts.
+     */
+    private CreditCombiner combinerFor(String accountNumber) {
+        boolean hot = hotAccounts.recordCredit(accountNumber);
+        CreditCombiner combiner = combiners.get(accountNumber);
+        if(combiner == null && hot){
+            combiner = combiners.computeIfAbsent(accountNumber,
+                    account -> new CreditCombiner(account, transactionRepository.partitionOf(account), partitionCount));
+        }
+        return combiner;
+    }
+
+    private boolean combine(CreditCombiner combiner, Transaction credit, int partition) {
+        if(combiner == null || !combiner.add(credit, partition)){
+            return false;
+        }
+        if(combiner.markQueued()){
+            combinedCredits[combiner.getOwner()].add(combiner);
+            signals[combiner.getOwner()].signal();
+        }
+        return true;
+    }
+
+    private int completeInFlightCredit(String accountNumber, int partition) {
+        if(inFlightCredits.computeIfPresent(accountNumber, (account, count) -> count == 1 ? null : count - 1) == null){
+            return releaseParkedTransactions(accountNumber, partition);
+        }
+        return 0;
+    }
+
+    private void handOff(Queue<Transaction>[] queues, Transaction transaction, String accountNumber) {
+        inFlightCredits.merge(accountNumber, 1, Integer::sum);
+        int partition = transactionRepository.partitionOf(accountNumber);
+        queues[partition].add(transaction);
+        signals[partition].signal();
+    }
+
+    private boolean parkIfHeldUp(Transaction transaction, int partition) {
+        String sender = transaction.getSender();
+        ArrayDeque<Transaction> parked = parkedTransactions[partition].get(sender);
+        if(parked == null && (transaction.getTransactionType() == TransactionType.DEPOSIT || !inFlightCredits.containsKey(sender))){
+            return false;
+        }
+        if(parked == null){
+            parked = new ArrayDeque<>();
+            parkedTransactions[partition].put(sender, parked);
+        }
+        parked.add(transaction);
+        parkedTransactionCount.increment(sender);
+        return true;
+    }
+
+    private int releaseParkedTransactions(String accountNumber, int partition) {
+        ArrayDeque<Transaction> parked = parkedTransactions[partition].remove(accountNumber);
+        int itemsProcessed = 0;
+        Transaction transaction;
+        while(parked != null && (transaction = parked.poll()) != null){
+            if(parkIfHeldUp(transaction, partition)){
+                parkedTransactions[partition].get(accountNumber).addAll(parked);
+                break;
+            }
+            itemsProcessed += processAndFinish(transaction, partition);
+        }
+        return itemsProcessed;
+    }
+
     private List<String> accountsForTransaction(Transaction transaction) {
         TransactionType transactionType = transaction.getTransactionType();
         List<String> accountsToGet = new ArrayList<>();
@@ -71,81 +475,138 @@ public class TransactionProcessor {
         return accountsToGet;
     }
 
-    private TransactionStatus processTransaction(Transaction nextTransaction,List<String> accountsToGet) {
-        if (!accountsExist(accountsToGet)){
-            System.out.printf("Some accounts in list %s  don't exist, rejecting transaction %s\n",accountsToGet,nextTransaction.getId());
+    private TransactionStatus processTransaction(Transaction nextTransaction, int partition) {
+        if(nextTransaction.getTransactionType() == TransactionType.TRANSFER && nextTransaction.getSender().equals(nextTransaction.getReceiver())){
+            log.debug("Transfer %s sends to its own account, rejecting it", nextTransaction.getId());
             return TransactionStatus.REJECTED;
         }
-
-        return processWithExistingAccounts(nextTransaction, accountsToGet);
-    }
-
-    private TransactionStatus processWithExistingAccounts(Transaction nextTransaction, List<String> accountsToGet) {
-        Map<String, Account> accounts = accountRepository.getAccounts(accountsToGet, true);
-        if(accounts.isEmpty()){
-            System.out.printf("Some accounts could not be locked from %s, postponing transaction %s\n",accountsToGet,nextTransaction.getId());
-            return TransactionStatus.POSTPONED;
+        if(nextTransaction.getTransactionType() == TransactionType.DEPOSIT){
+            if(combine(combinerFor(nextTransaction.getSender()), nextTransaction, partition)){
+                return TransactionStatus.POSTPONED;
+            }
+        } else {
+            CreditCombiner senderCombiner = combiners.get(nextTransaction.getSender());
+            if(senderCombiner != null){
+                applyCombinedCredits(senderCombiner);
+            }
         }
-
-        TransactionStatus status = processWithLockedAccounts(nextTransaction, accounts);
-        accountRepository.unlockAccounts(new ArrayList<>(accounts.values()));
+        // Looked up once, as it counts the credit towards finding hot accounts, however often the commit is retried.
+        CreditCombiner receiverCombiner = nextTransaction.getTransactionType() == TransactionType.TRANSFER ? combinerFor(nextTransaction.getReceiver()) : null;
+        List<String> accountsToGet = accountsForTransaction(nextTransaction);
+        TransactionStatus status;
+        do {
+            Map<String, Account> accounts = accountRepository.getAccounts(accountsToGet);
+            if (accounts.size() != accountsToGet.size()){
+                log.debug("Some accounts in list %s don't exist, rejecting transaction %s", accountsToGet, nextTransaction.getId());
+                return TransactionStatus.REJECTED;
+            }
+            status = processWithOwnedAccounts(nextTransaction, accounts, receiverCombiner, partition);
+        } while(status == null);
         return status;
     }
 
-    private TransactionStatus processWithLockedAccounts(Transaction nextTransaction, Map<String, Account> accounts) {
+    /**
+     * Returns null if the commit found an account changed since it was read, so the transaction has to be read again.
+     */
+    private TransactionStatus processWithOwnedAccounts(Transaction nextTransaction, Map<String, Account> accounts, CreditCombiner receiverCombiner, int partition) {
+        if(receiverCombiner != null || isHandOff(nextTransaction, partition)){
+            return debitAndHandOff(nextTransaction, accounts, receiverCombiner, partition);
+        }
+
         boolean isSuccess = tryTransaction(nextTransaction,accounts);
         if(!isSuccess){
-            System.out.printf("Some constraints are not met, rejecting transaction %s\n",nextTransaction.getId());
+            log.debug("Some constraints are not met, rejecting transaction %s", nextTransaction.getId());
             return TransactionStatus.REJECTED;
         }
 
-        boolean updateSuccess = accountRepository.updateAccounts(new ArrayList<>(accounts.values()));
-        return updateSuccess ? TransactionStatus.FINISHED : TransactionStatus.POSTPONED;
+        if(!accountRepository.commit(new ArrayList<>(accounts.values()))){
+            return null;
+        }
+        recordEntries(nextTransaction, accounts);
+        return TransactionStatus.FINISHED;
+    }
+
+    private boolean isHandOff(Transaction transaction, int partition) {
+        return transaction.getTransactionType() == TransactionType.TRANSFER
+                && transactionRepository.partitionOf(transaction.getReceiver()) != partition;
+    }
+
+    private TransactionStatus debitAndHandOff(Transaction nextTransaction, Map<String, Account> accounts, CreditCombiner receiverCombiner, int partition) {
+        Account senderAccount = accounts.get(nextTransaction.getSender());
+        if(!handleWithdrawal(senderAccount, nextTransaction.getAmount())){
+            log.debug("Some constraints are not met, rejecting transaction %s", nextTransaction.getId());
+            return TransactionStatus.REJECTED;
+        }
+
+        if(!accountRepository.commit(Collections.singletonList(senderAccount))){
+            return null;
+        }
+        ledger.record(nextTransaction.getSender(), nextTransaction.getId(), -nextTransaction.getAmount(), senderAccount.getBalance());
+        if(!combine(receiverCombiner, nextTransaction, partition)){
+            handOff(handedOffCredits, nextTransaction, nextTransaction.getReceiver());
+            handedOffCreditCount.increment();
+        }
+        return TransactionStatus.POSTPONED;
+    }
+
+    private void recordEntries(Transaction transaction, Map<String, Account> accounts) {
+        String sender = transaction.getSender();
+        long amount = transaction.getAmount();
+        TransactionType transactionType = transaction.getTransactionType();
+        if (transactionType == TransactionType.TRANSFER) {
+            ledger.record(sender, transaction.getId(), -amount, accounts.get(sender).getBalance());
+            ledger.record(transaction.getReceiver(), transaction.getId(), amount, accounts.get(transaction.getReceiver()).getBalance());
+        } else if (transactionType == TransactionType.DEPOSIT) {
+            ledger.record(sender, transaction.getId(), amount, accounts.get(sender).getBalance());
+        } else {
+            ledger.record(sender, transaction.getId(), -amount, accounts.get(sender).getBalance());
+        }
     }
 
     private boolean tryTransaction(Transaction nextTransaction, Map<String, Account> accounts) {
         String sender = nextTransaction.getSender();
         String receiver = nextTransaction.getReceiver();
-        BigDecimal amount = nextTransaction.getAmount();
+        long amount = nextTransaction.getAmount();
         TransactionType transactionType = nextTransaction.getTransactionType();
         boolean isSuccess = true;
         if (transactionType == TransactionType.TRANSFER) {
             isSuccess = handleTransfer(accounts, sender, receiver, amount);
         } else if (transactionType == TransactionType.DEPOSIT) {
-            handleDeposit(accounts.get(sender), amount);
+            isSuccess = handleDeposit(accounts.get(sender), amount);
         } else {
             isSuccess = handleWithdrawal(accounts.get(sender), amount);
         }
         return isSuccess;
     }
 
-    private boolean accountsExist(List<String> accountsToGet) {
-        Map<String, Account> existingAccounts = accountRepository.getAccounts(accountsToGet,false);
-        return existingAccounts.size() == accountsToGet.size();
-    }
+    private boolean handleDeposit(Account account, long amount) {
+        if (!Money.canAdd(account.getBalance(), amount)) {
+            return false;
+        }
 
-    private void handleDeposit(Account account, BigDecimal amount) {
-        account.setBalance(account.getBalance().add(amount));
+        account.setBalance(Money.add(account.getBalance(), amount));
+        return true;
     }
 
-    private boolean handleWithdrawal(Account account, BigDecimal amount) {
-        if (account.getBalance().compareTo(amount) < 0) {
+    private boolean handleWithdrawal(Account account, long amount) {
+        if (account.getBalance() < amount || !Money.canSubtract(account.getBalance(), amount)) {
             return false;
         }
 
-        account.setBalance(account.getBalance().subtract(amount));
+        account.setBalance(Money.subtract(account.getBalance(), amount));
         return true;
     }
 
-    private boolean handleTransfer(Map<String, Account> accounts, String sender, String receiver, BigDecimal amount) {
+    private boolean handleTransfer(Map<String, Account> accounts, String sender, String receiver, long amount) {
         Account senderAccount = accounts.get(sender);
         Account receiverAccount = accounts.get(receiver);
-        if (senderAccount.getBalance().compareTo(amount) < 0) {
+        if (senderAccount.getBalance() < amount || !Money.canSubtract(senderAccount.getBalance(), amount)
+                || !Money.canAdd(receiverAccount.getBalance(), amount)) {
             return false;
         }
 
-        senderAccount.setBalance(senderAccount.getBalance().subtract(amount));
-        receiverAccount.setBalance(receiverAccount.getBalance().add(amount));
+        senderAccount.setBalance(Money.subtract(senderAccount.getBalance(), amount));
+        receiverAccount.setBalance(Money.add(receiverAccount.getBalance(), amount));
         return true;
     }
 }
@@ -0,0 +1,15 @@
+package com.revolut;
+
+public enum WaitStrategy {
+    LOW_LATENCY(20_000),LOW_CPU(0);
+
+    private final int spins;
+
+    WaitStrategy(int spins) {
+        this.spins = spins;
+    }
+
+    public int getSpins() {
+        return spins;
+    }
+}
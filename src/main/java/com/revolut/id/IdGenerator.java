@@ -0,0 +1,16 @@
+package com.revolut.id;
+
+/**
+ * Source of the 64-bit ids of accounts and transactions. Ids are kept as longs by the stores and formatted with
+ * {@link Ids#format(long)} only where they leave as strings. An id is never zero, which marks no account.
+ */
+public interface IdGenerator {
+
+    long nextId();
+
+    /**
+     * Makes sure ids handed out from now on sort after {@code id}, which was handed out before a restart.
+     */
+    default void advancePast(long id) {
+    }
+}
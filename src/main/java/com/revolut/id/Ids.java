@@ -0,0 +1,67 @@
+package com.revolut.id;
+
+/**
+ * The string form of an id is its 16 lowercase hex digits, so it has a fixed width and sorts like the id. Only that
+ * exact form is read back, so every id has one string.
+ */
+public final class Ids {
+
+    private static final int LENGTH = 16;
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Ids() {
+    }
+
+    public static String format(long id) {
+        char[] chars = new char[LENGTH];
+        for(int position = LENGTH - 1; position >= 0; position--){
+            chars[position] = DIGITS[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    public static boolean isId(String value) {
+        if(value == null || value.length() != LENGTH){
+            return false;
+        }
+        for(int position = 0; position < LENGTH; position++){
+            if(digit(value.charAt(position)) < 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a string checked with {@link #isId(String)}.
+     */
+    public static long parse(String value) {
+        long id = 0;
+        for(int position = 0; position < LENGTH; position++){
+            id = (id << 4) | digit(value.charAt(position));
+        }
+        return id;
+    }
+
+    private static int digit(char character) {
+        if(character >= '0' && character <= '9'){
+            return character - '0';
+        }
+        if(character >= 'a' && character <= 'f'){
+            return character - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Spreads the bits of an id for the open addressing tables that are keyed by it.
+     */
+    public static int hash(long id) {
+        long hash = id;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
@@ -0,0 +1,55 @@
+package com.revolut.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids made of the milliseconds since 2020-01-01 in 41 bits, a node id in 10 bits and a sequence within the
+ * millisecond in 12 bits, so ids from one node increase over time and ids from different nodes never collide.
+ * A single compare and set hands out each id. When more than 4096 ids are taken in one millisecond, or the clock
+ * goes back, the generator keeps counting from its last id rather than waiting for the clock.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    static final long EPOCH = 1577836800000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong();
+
+    public TimeOrderedIdGenerator(int node) {
+        if(node < 0 || node > MAX_NODE){
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE + ", was " + node);
+        }
+        this.node = node;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(now, previous + 1);
+        } while(!last.compareAndSet(previous, next));
+        return toId(next);
+    }
+
+    @Override
+    public void advancePast(long id) {
+        long time = id >>> (NODE_BITS + SEQUENCE_BITS);
+        long sequence = id & ((1L << SEQUENCE_BITS) - 1);
+        long used = (time << SEQUENCE_BITS) | sequence;
+        long previous;
+        while((previous = last.get()) < used && !last.compareAndSet(previous, used)){
+        }
+    }
+
+    private long toId(long timeAndSequence) {
+        long time = timeAndSequence >>> SEQUENCE_BITS;
+        long sequence = timeAndSequence & ((1L << SEQUENCE_BITS) - 1);
+        return (time << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -0,0 +1,317 @@
+package com.revolut.ingest;
+
+import com.revolut.id.Ids;
+import com.revolut.logging.Logger;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.TransactionRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts transactions in a length-prefixed binary format, for feeds that would otherwise pay for JSON and HTTP on
+ * every transaction. All integers are big endian.
+ * <pre>
+ * request frame: int length, int correlationId, int count, count records of
+ *                byte type, long sender, long receiver, long amount
+ * ack frame:     int length, int correlationId, int count, count longs of the assigned ids
+ * </pre>
+ * {@code length} counts the bytes after itself. Accounts and transactions are sent as their 64-bit ids, and a receiver
+ * of zero means none. An acked id of zero means the transaction was refused because the waiting queue was full, and it
+ * may be sent again later. Clients may pipeline frames without waiting for acks. Every complete frame in a read is
+ * added to the {@link TransactionRepository} in one call, so they share one journal flush, and their acks go out in one
+ * write. A frame is accepted only once it is acked; a malformed frame closes the connection and the unacked frames
+ * before it are dropped.
+ * <p>
+ * One selector thread reads, decodes and writes for every connection, and hands the decoded frames to a pool of ingest
+ * threads, which wait for the journal while the selector goes on serving other connections. A connection is not read
+ * while its frames are being added or its acks are not fully written, so acks go out in order and a client that stops
+ * reading acks stops being read.
+ */
+public class BinaryIngestServer implements Closeable {
+
+    private static final Logger log = Logger.getLogger(BinaryIngestServer.class);
+    static final int HEADER_BYTES = 12;
+    static final int RECORD_BYTES = 25;
+    static final int ID_BYTES = 8;
+
+    private final TransactionRepository transactionRepository;
+    private final int maxFrameBytes;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final ExecutorService ingestThreads;
+    private final Queue<AddedFrames> addedFrames = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public BinaryIngestServer(InetSocketAddress address, int maxFrameBytes, TransactionRepository transactionRepository) throws IOException {
+        this(address, maxFrameBytes, Runtime.getRuntime().availableProcessors(), transactionRepository);
+    }
+
+    public BinaryIngestServer(InetSocketAddress address, int maxFrameBytes, int ingestThreadCount, TransactionRepository transactionRepository) throws IOException {
+        this.transactionRepository = transactionRepository;
+        this.maxFrameBytes = maxFrameBytes;
+        AtomicInteger ingestThreadNumber = new AtomicInteger();
+        this.ingestThreads = Executors.newFixedThreadPool(ingestThreadCount, runnable -> {
+            Thread ingestThread = new Thread(runnable, "binary-ingest-" + ingestThreadNumber.incrementAndGet());
+            ingestThread.setDaemon(true);
+            return ingestThread;
+        });
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "binary-ingest");
+        thread.setDaemon(true);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        thread.start();
+        log.info("Accepting binary transaction frames on port %s", getPort());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ingestThreads.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            while(running){
+                selector.select();
+                writeAddedFrames();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Binary ingest stopped: %s", e);
+        } finally {
+            for(SelectionKey key : selector.keys()){
+                closeQuietly(key);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if(!key.isValid()){
+                return;
+            }
+            if(key.isAcceptable()){
+                accept();
+            } else if(key.isReadable()){
+                read(key);
+            } else if(key.isWritable()){
+                write(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Closing binary ingest connection: %s", e);
+            closeQuietly(key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if(channel == null){
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(maxFrameBytes));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if(((SocketChannel) key.channel()).read(connection.in) < 0){
+            closeQuietly(key);
+            return;
+        }
+        process(key, connection);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ((SocketChannel) key.channel()).write(connection.out);
+        if(!connection.out.hasRemaining()){
+            connection.out.clear();
+            key.interestOps(SelectionKey.OP_READ);
+            process(key, connection);
+        }
+    }
+
+    /**
+     * Hands every complete frame buffered on the connection to the ingest threads and stops reading it until their
+     * acks are written. Called only once the previous acks are written, which leaves room in the output buffer for the
+     * acks of a full input buffer.
+     */
+    private void process(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        List<Transaction> transactions = new ArrayList<>();
+        List<int[]> frames = new ArrayList<>();
+        while(in.remaining() >= Integer.BYTES){
+            int length = in.getInt(in.position());
+            if(length < HEADER_BYTES - Integer.BYTES || length > maxFrameBytes - Integer.BYTES){
+                throw new IOException("Invalid frame length " + length);
+            }
+            if(in.remaining() < Integer.BYTES + length){
+                break;
+            }
+            in.getInt();
+            int correlationId = in.getInt();
+            int count = in.getInt();
+            if(count < 0 || (long) count * RECORD_BYTES != length - (HEADER_BYTES - Integer.BYTES)){
+                throw new IOException("Frame " + correlationId + " has " + count + " records in " + length + " bytes");
+            }
+            for(int record = 0; record < count; record++){
+                transactions.add(decode(in));
+            }
+            frames.add(new int[]{correlationId, count});
+        }
+        in.compact();
+        if(frames.isEmpty()){
+            return;
+        }
+        key.interestOps(0);
+        CompletableFuture.supplyAsync(() -> transactionRepository.addTransactions(transactions), ingestThreads)
+                .whenComplete((ids, failure) -> {
+                    addedFrames.add(new AddedFrames(key, frames, ids, failure));
+                    selector.wakeup();
+                });
+    }
+
+    /**
+     * Writes the acks of the frames the ingest threads have added, on the selector thread, and goes on with whatever
+     * the connections buffered meanwhile.
+     */
+    private void writeAddedFrames() {
+        AddedFrames added;
+        while((added = addedFrames.poll()) != null){
+            SelectionKey key = added.key;
+            if(!key.isValid()){
+                continue;
+            }
+            try {
+                if(added.failure != null){
+                    throw new IOException("Unable to add transactions", added.failure);
+                }
+                writeAcks(key, (Connection) key.attachment(), added.frames, added.ids);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Closing binary ingest connection: %s", e);
+                closeQuietly(key);
+            }
+        }
+    }
+
+    private void writeAcks(SelectionKey key, Connection connection, List<int[]> frames, List<String> ids) throws IOException {
+        ByteBuffer out = connection.out;
+        int next = 0;
+        for(int[] frame : frames){
+            out.putInt(HEADER_BYTES - Integer.BYTES + frame[1] * ID_BYTES);
+            out.putInt(frame[0]);
+            out.putInt(frame[1]);
+            for(int record = 0; record < frame[1]; record++){
+                String id = ids.get(next++);
+                out.putLong(id == null ? 0 : Ids.parse(id));
+            }
+        }
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        if(out.hasRemaining()){
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            out.clear();
+            key.interestOps(SelectionKey.OP_READ);
+            process(key, connection);
+        }
+    }
+
+    private static Transaction decode(ByteBuffer in) throws IOException {
+        int type = in.get();
+        if(type < 0 || type >= TransactionType.values().length){
+            throw new IOException("Invalid transaction type " + type);
+        }
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(TransactionType.values()[type]);
+        transaction.setSender(accountNumber(in.getLong()));
+        transaction.setReceiver(accountNumber(in.getLong()));
+        transaction.setAmount(in.getLong());
+        return transaction;
+    }
+
+    private static String accountNumber(long id) {
+        return id == 0 ? null : Ids.format(id);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Unable to close %s: %s", closeable, e);
+        }
+    }
+
+    private static final class AddedFrames {
+
+        private final SelectionKey key;
+        private final List<int[]> frames;
+        private final List<String> ids;
+        private final Throwable failure;
+
+        private AddedFrames(SelectionKey key, List<int[]> frames, List<String> ids, Throwable failure) {
+            this.key = key;
+            this.frames = frames;
+            this.ids = ids;
+            this.failure = failure;
+        }
+    }
+
+    private static final class Connection {
+
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+
+        private Connection(int maxFrameBytes) {
+            this.in = ByteBuffer.allocateDirect(maxFrameBytes);
+            this.out = ByteBuffer.allocateDirect(maxFrameBytes);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.revolut.journal;
+
+public enum FlushPolicy {
+    GROUP,INTERVAL,NONE;
+}
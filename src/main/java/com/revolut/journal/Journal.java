@@ -0,0 +1,53 @@
+package com.revolut.journal;
+
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+
+/**
+ * Append methods return the position just past the record, which {@link #awaitDurable(long)} waits for.
+ * {@link #durablePosition()} tells without waiting how far records are durable, or as durable as they will get.
+ */
+public interface Journal {
+
+    Journal NONE = new Journal() {
+        @Override
+        public long accountCreated(Account account) {
+            return 0;
+        }
+
+        @Override
+        public long transactionAccepted(Transaction transaction) {
+            return 0;
+        }
+
+        @Override
+        public long transactionFinished(Transaction transaction, boolean isRejected) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long position) {
+        }
+
+        @Override
+        public long durablePosition() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public void replay(JournalReplay replay) {
+        }
+    };
+
+    long accountCreated(Account account);
+
+    long transactionAccepted(Transaction transaction);
+
+    long transactionFinished(Transaction transaction, boolean isRejected);
+
+    void awaitDurable(long position);
+
+    long durablePosition();
+
+    void replay(JournalReplay replay);
+}
@@ -0,0 +1,81 @@
+package com.revolut.journal;
+
+import com.revolut.model.Account;
+import com.revolut.model.Money;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountRepository;
+import com.revolut.repository.TransactionRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rebuilds the repositories from a snapshot and the journal records after it. Balances are not journaled on their own: they are the effects of the
+ * finished transactions, applied when the finish record is replayed. A transaction whose finish record was lost runs
+ * again, so a transfer that had only been debited before a crash is never half applied.
+ */
+public class JournalReplay {
+
+    private final Map<String, Account> accounts = new LinkedHashMap<>();
+    private final Map<String, Transaction> transactions = new HashMap<>();
+    private final Map<String, TransactionStatus> statuses = new LinkedHashMap<>();
+
+    /**
+     * An account can be both in a snapshot and created again in a segment after it, as accounts are created while a
+     * snapshot is taken. The snapshot's copy is the newer one and is kept.
+     */
+    void accountCreated(Account account) {
+        accounts.putIfAbsent(account.getAccountNumber(), account);
+    }
+
+    void transactionAccepted(Transaction transaction) {
+        transactions.put(transaction.getId(), transaction);
+        statuses.put(transaction.getId(), TransactionStatus.POSTPONED);
+    }
+
+    void transactionRestored(Transaction transaction, TransactionStatus status) {
+        transactions.put(transaction.getId(), transaction);
+        statuses.put(transaction.getId(), status);
+    }
+
+    void transactionFinished(String id, boolean isRejected) {
+        Transaction transaction = transactions.get(id);
+        if(transaction == null || statuses.get(id) != TransactionStatus.POSTPONED){
+            return;
+        }
+        statuses.put(id, isRejected ? TransactionStatus.REJECTED : TransactionStatus.FINISHED);
+        if(!isRejected){
+            applyEffects(transaction);
+        }
+    }
+
+    public void restore(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        accountRepository.restore(new ArrayList<>(accounts.values()));
+        for(Map.Entry<String, TransactionStatus> status : statuses.entrySet()){
+            transactionRepository.restore(transactions.get(status.getKey()), status.getValue());
+        }
+    }
+
+    private void applyEffects(Transaction transaction) {
+        long amount = transaction.getAmount();
+        if(transaction.getTransactionType() == TransactionType.DEPOSIT){
+            credit(transaction.getSender(), amount);
+        } else if(transaction.getTransactionType() == TransactionType.WITHDRAWAL){
+            credit(transaction.getSender(), -amount);
+        } else {
+            credit(transaction.getSender(), -amount);
+            credit(transaction.getReceiver(), amount);
+        }
+    }
+
+    private void credit(String accountNumber, long amount) {
+        Account account = accounts.get(accountNumber);
+        if(account != null){
+            account.setBalance(Money.add(account.getBalance(), amount));
+        }
+    }
+}
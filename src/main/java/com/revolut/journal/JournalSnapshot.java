@@ -0,0 +1,128 @@
+package com.revolut.journal;
+
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The balances of the accounts and the transactions not yet completed once every segment up to the sequence in its
+ * header has been applied. It is written to a temporary file, forced and moved into place, and ends with the CRC32 of
+ * everything before it. Every transaction carries its status, which is postponed for the ones written now.
+ */
+final class JournalSnapshot {
+
+    private static final int MAGIC = 0x534e4150;
+
+    private JournalSnapshot() {
+    }
+
+    static void write(Path file, long sequence, Collection<Account> accounts, Collection<Transaction> pending) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(accounts.size());
+            for(Account account : accounts){
+                writeString(out, account.getAccountNumber());
+                writeString(out, account.getName());
+                writeString(out, account.getEmail());
+                out.writeLong(account.getBalance());
+            }
+            out.writeInt(pending.size());
+            for(Transaction transaction : pending){
+                writeString(out, transaction.getId());
+                out.writeByte(TransactionStatus.POSTPONED.ordinal());
+                out.writeByte(transaction.getTransactionType() == null ? -1 : transaction.getTransactionType().ordinal());
+                writeString(out, transaction.getSender());
+                writeString(out, transaction.getReceiver());
+                out.writeLong(transaction.getAmount());
+            }
+            out.flush();
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.putLong(0, checksum.getValue());
+            channel.write(trailer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the sequence of the last segment the snapshot covers
+     */
+    static long read(Path file, JournalReplay replay) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), checksum))) {
+            if(in.readInt() != MAGIC){
+                throw new IOException("Not a journal snapshot " + file);
+            }
+            long sequence = in.readLong();
+            int accountCount = in.readInt();
+            for(int index = 0; index < accountCount; index++){
+                Account account = new Account();
+                account.setAccountNumber(readString(in));
+                account.setName(readString(in));
+                account.setEmail(readString(in));
+                account.setBalance(in.readLong());
+                replay.accountCreated(account);
+            }
+            int transactionCount = in.readInt();
+            for(int index = 0; index < transactionCount; index++){
+                Transaction transaction = new Transaction();
+                transaction.setId(readString(in));
+                TransactionStatus status = TransactionStatus.values()[in.readByte()];
+                byte type = in.readByte();
+                transaction.setTransactionType(type < 0 ? null : TransactionType.values()[type]);
+                transaction.setSender(readString(in));
+                transaction.setReceiver(readString(in));
+                transaction.setAmount(in.readLong());
+                replay.transactionRestored(transaction, status);
+            }
+            long expected = checksum.getValue();
+            if(in.readLong() != expected){
+                throw new IOException("Checksum mismatch in journal snapshot " + file);
+            }
+            return sequence;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,466 @@
+package com.revolut.journal;
+
+import com.revolut.logging.Logger;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountRepository;
+import com.revolut.repository.TransactionRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Appends records to memory-mapped segment files named by sequence. A record is the length of its body, the CRC32 of
+ * the body and the body, and the zeros after the last record end a segment. Every start opens a new segment, so a torn
+ * record can only be the tail of an older one and replay moves on to the next segment when it meets one.
+ * <p>
+ * With {@link FlushPolicy#GROUP} a flusher thread forces whatever was appended since its last force and wakes the
+ * callers waiting in {@link #awaitDurable(long)}, so one force covers every record appended in the meantime. They wait
+ * on a condition of a lock rather than on a monitor, so a virtual thread waiting for its record unmounts from its carrier.
+ * {@link FlushPolicy#INTERVAL} forces at most once per interval and nobody waits, {@link FlushPolicy#NONE} leaves
+ * writing back to the operating system.
+ * <p>
+ * {@link #snapshot} holds the processor still just long enough to seal the open segment and copy the balances of the
+ * accounts and the transactions not yet completed out of the live repositories, then writes them out and deletes the
+ * segments and older snapshots that it covers. Old segments and snapshots are never read again, so its cost follows
+ * the number of accounts and pending transactions rather than the length of the journal. Statuses of completed
+ * transactions are not part of it, they are answered by the status index and the archive, whose tables are kept
+ * across restarts when it is given a directory of its own.
+ */
+public class MappedJournal implements Journal, Closeable {
+
+    private static final Logger log = Logger.getLogger(MappedJournal.class);
+    private static final byte ACCOUNT_CREATED = 1;
+    private static final byte TRANSACTION_ACCEPTED = 2;
+    private static final byte TRANSACTION_FINISHED = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FlushPolicy flushPolicy;
+    private final long flushIntervalMillis;
+    private final List<Path> replaySegments;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appendedMore = lock.newCondition();
+    private final Condition forced = lock.newCondition();
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer body = ByteBuffer.allocate(4096);
+    private long nextSequence;
+    private long currentSequence;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long appended;
+    private volatile long durable;
+    private boolean flusherWaiting;
+    private volatile boolean closed;
+
+    public MappedJournal(Path directory, int segmentSize, FlushPolicy flushPolicy, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flushPolicy = flushPolicy;
+        this.flushIntervalMillis = flushIntervalMillis;
+        Files.createDirectories(directory);
+        this.replaySegments = listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        this.nextSequence = replaySegments.isEmpty() ? 0 : sequenceOf(replaySegments.get(replaySegments.size() - 1), SEGMENT_PREFIX, SEGMENT_SUFFIX) + 1;
+        openSegment();
+        if(flushPolicy != FlushPolicy.NONE){
+            Thread flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    @Override
+    public long accountCreated(Account account) {
+        byte[] accountNumber = encode(account.getAccountNumber());
+        byte[] name = encode(account.getName());
+        byte[] email = encode(account.getEmail());
+        lock.lock();
+        try {
+            ByteBuffer record = startRecord(ACCOUNT_CREATED, sizeOf(accountNumber) + sizeOf(name) + sizeOf(email));
+            putBytes(record, accountNumber);
+            putBytes(record, name);
+            putBytes(record, email);
+            return append(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long transactionAccepted(Transaction transaction) {
+        byte[] id = encode(transaction.getId());
+        byte[] sender = encode(transaction.getSender());
+        byte[] receiver = encode(transaction.getReceiver());
+        TransactionType type = transaction.getTransactionType();
+        lock.lock();
+        try {
+            ByteBuffer record = startRecord(TRANSACTION_ACCEPTED, sizeOf(id) + 1 + sizeOf(sender) + sizeOf(receiver) + 8);
+            putBytes(record, id);
+            record.put((byte) (type == null ? -1 : type.ordinal()));
+            putBytes(record, sender);
+            putBytes(record, receiver);
+            record.putLong(transaction.getAmount());
+            return append(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long transactionFinished(Transaction transaction, boolean isRejected) {
+        byte[] id = encode(transaction.getId());
+        lock.lock();
+        try {
+            ByteBuffer record = startRecord(TRANSACTION_FINISHED, sizeOf(id) + 1);
+            putBytes(record, id);
+            record.put((byte) (isRejected ? 1 : 0));
+            return append(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+        if(flushPolicy != FlushPolicy.GROUP){
+            return;
+        }
+        lock.lock();
+        try {
+            while(durable < position && !closed){
+                forced.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Only {@link FlushPolicy#GROUP} waits for records to be forced, with any other policy every record is as durable
+     * as it gets once appended.
+     */
+    @Override
+    public long durablePosition() {
+        return flushPolicy == FlushPolicy.GROUP && !closed ? durable : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void replay(JournalReplay replay) {
+        long replayAfter = loadNewestSnapshot(replay);
+        int records = 0;
+        int segments = 0;
+        for(Path path : replaySegments){
+            if(sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) > replayAfter){
+                records += replaySegment(path, replay);
+                segments++;
+            }
+        }
+        log.info("Replayed %s journal records from %s segments", records, segments);
+    }
+
+    public void startSnapshots(long intervalMillis, Quiescence quiescence, AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(quiescence, accountRepository, transactionRepository);
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to snapshot the journal in %s: %s", directory, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Not safe to run concurrently with itself, {@link #startSnapshots} runs it from a single thread.
+     */
+    public void snapshot(Quiescence quiescence, AccountRepository accountRepository, TransactionRepository transactionRepository) throws IOException {
+        long[] sealedSequence = {-1};
+        List<Account> accounts = new ArrayList<>();
+        List<Transaction> pending = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        quiescence.whileQuiescent(() -> {
+            lock.lock();
+            try {
+                if(closed){
+                    return;
+                }
+                rollSegment();
+                sealedSequence[0] = currentSequence - 1;
+            } finally {
+                lock.unlock();
+            }
+            accountRepository.scan(0, Integer.MAX_VALUE, accounts::add);
+            pending.addAll(transactionRepository.pendingTransactions());
+        });
+        if(sealedSequence[0] < 0){
+            return;
+        }
+        long quiescentMillis = System.currentTimeMillis() - startTime;
+        long sealed = sealedSequence[0];
+        JournalSnapshot.write(directory.resolve(fileName(SNAPSHOT_PREFIX, sealed, SNAPSHOT_SUFFIX)), sealed, accounts, pending);
+
+        for(Path path : listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)){
+            if(sequenceOf(path, SEGMENT_PREFIX, SEGMENT_SUFFIX) <= sealed){
+                Files.deleteIfExists(path);
+            }
+        }
+        for(Path path : listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)){
+            if(sequenceOf(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < sealed){
+                Files.deleteIfExists(path);
+            }
+        }
+        log.info("Snapshot of journal up to segment %s written in %s ms, %s ms of it quiescent", sealed, System.currentTimeMillis() - startTime, quiescentMillis);
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if(closed){
+                return;
+            }
+            closed = true;
+            appendedMore.signalAll();
+            forced.signalAll();
+            if(flushPolicy != FlushPolicy.NONE){
+                segment.force();
+            }
+            closeChannel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long loadNewestSnapshot(JournalReplay replay) {
+        try {
+            List<Path> snapshots = listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if(snapshots.isEmpty()){
+                return -1;
+            }
+            return JournalSnapshot.read(snapshots.get(snapshots.size() - 1), replay);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load the journal snapshot in " + directory, e);
+        }
+    }
+
+    private int replaySegment(Path path, JournalReplay replay) {
+        int records = 0;
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            while(buffer.remaining() >= HEADER_SIZE){
+                int length = buffer.getInt();
+                int expectedChecksum = buffer.getInt();
+                if(length <= 0 || length > buffer.remaining()){
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                CRC32 recordChecksum = new CRC32();
+                recordChecksum.update(bytes, 0, length);
+                if((int) recordChecksum.getValue() != expectedChecksum){
+                    log.warn("Ignoring the torn tail of journal segment %s", path);
+                    break;
+                }
+                dispatch(ByteBuffer.wrap(bytes), replay);
+                records++;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to replay journal segment " + path, e);
+        }
+        return records;
+    }
+
+    private void dispatch(ByteBuffer record, JournalReplay replay) {
+        byte type = record.get();
+        if(type == ACCOUNT_CREATED){
+            Account account = new Account();
+            account.setAccountNumber(getString(record));
+            account.setName(getString(record));
+            account.setEmail(getString(record));
+            replay.accountCreated(account);
+        } else if(type == TRANSACTION_ACCEPTED){
+            Transaction transaction = new Transaction();
+            transaction.setId(getString(record));
+            byte transactionType = record.get();
+            transaction.setTransactionType(transactionType < 0 ? null : TransactionType.values()[transactionType]);
+            transaction.setSender(getString(record));
+            transaction.setReceiver(getString(record));
+            transaction.setAmount(record.getLong());
+            replay.transactionAccepted(transaction);
+        } else if(type == TRANSACTION_FINISHED){
+            String id = getString(record);
+            replay.transactionFinished(id, record.get() == 1);
+        } else {
+            log.warn("Skipping journal record of unknown type %s", type);
+        }
+    }
+
+    private ByteBuffer startRecord(byte type, int size) {
+        if(body.capacity() < size + 1){
+            body = ByteBuffer.allocate(Math.max(size + 1, body.capacity() * 2));
+        }
+        body.clear();
+        body.put(type);
+        return body;
+    }
+
+    private long append(ByteBuffer record) {
+        int length = record.position();
+        if(HEADER_SIZE + length > segmentSize){
+            throw new IllegalArgumentException("Journal record of " + length + " bytes doesn't fit in a segment");
+        }
+        if(closed){
+            throw new IllegalStateException("Journal is closed");
+        }
+        if(segment.remaining() < HEADER_SIZE + length){
+            rollSegment();
+        }
+        checksum.reset();
+        checksum.update(record.array(), 0, length);
+        segment.putInt(length);
+        segment.putInt((int) checksum.getValue());
+        segment.put(record.array(), 0, length);
+        appended += HEADER_SIZE + length;
+        if(flusherWaiting){
+            appendedMore.signal();
+        }
+        return appended;
+    }
+
+    private void rollSegment() {
+        if(flushPolicy != FlushPolicy.NONE){
+            segment.force();
+        }
+        closeChannel();
+        try {
+            openSegment();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open a new journal segment in " + directory, e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        currentSequence = nextSequence++;
+        Path path = directory.resolve(fileName(SEGMENT_PREFIX, currentSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        log.debug("Opened journal segment %s", path);
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Unable to close journal segment channel %s", e.getMessage());
+        }
+    }
+
+    private void flushLoop() {
+        while(!closed){
+            MappedByteBuffer toForce;
+            long target;
+            lock.lock();
+            try {
+                while(appended == durable && !closed){
+                    flusherWaiting = true;
+                    appendedMore.await();
+                }
+                flusherWaiting = false;
+                target = appended;
+                toForce = segment;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            toForce.force();
+            lock.lock();
+            try {
+                durable = target;
+                forced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if(flushPolicy == FlushPolicy.INTERVAL){
+                try {
+                    Thread.sleep(flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static List<Path> listFiles(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for(Path path : stream){
+                files.add(path);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String fileName(String prefix, long sequence, String suffix) {
+        return String.format("%s%016d%s", prefix, sequence, suffix);
+    }
+
+    private static long sequenceOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if(bytes != null){
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0){
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
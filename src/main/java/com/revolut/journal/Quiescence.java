@@ -0,0 +1,14 @@
+package com.revolut.journal;
+
+/**
+ * Whatever changes balances and completes transactions, which {@link MappedJournal#snapshot} holds still while it
+ * takes the state a snapshot is made of.
+ */
+public interface Quiescence {
+
+    /**
+     * Runs the action once no balance is half changed and no transaction is part way through, and keeps it so until the
+     * action returns.
+     */
+    void whileQuiescent(Runnable action);
+}
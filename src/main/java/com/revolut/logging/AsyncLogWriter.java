@@ -0,0 +1,107 @@
+package com.revolut.logging;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi producer, single consumer ring of preallocated events. Producers never block: when the ring is full the
+ * event is dropped and counted. Formatting and writing happen on the writer thread only.
+ */
+class AsyncLogWriter implements Runnable {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LogEvent[] ring;
+    private final int mask;
+    private final PrintStream out;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile long consumed;
+
+    AsyncLogWriter(int capacity, PrintStream out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new LogEvent[size];
+        this.mask = size - 1;
+        this.out = out;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new LogEvent();
+        }
+    }
+
+    void publish(LogLevel level, String loggerName, String format, int argumentCount, Object first, Object second, Object third, long suppressed) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        LogEvent event = ring[(int) sequence & mask];
+        event.timestamp = System.currentTimeMillis();
+        event.level = level;
+        event.loggerName = loggerName;
+        event.threadName = Thread.currentThread().getName();
+        event.format = format;
+        event.argumentCount = argumentCount;
+        event.first = first;
+        event.second = second;
+        event.third = third;
+        event.suppressed = suppressed;
+        event.sequence = sequence;
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!drain()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        drain();
+    }
+
+    synchronized boolean drain() {
+        boolean wroteAny = false;
+        long next = consumed;
+        LogEvent event;
+        while ((event = ring[(int) next & mask]).sequence == next) {
+            write(event);
+            event.clear();
+            consumed = ++next;
+            wroteAny = true;
+        }
+        if (wroteAny) {
+            out.flush();
+        }
+        return wroteAny;
+    }
+
+    private void write(LogEvent event) {
+        line.setLength(0);
+        line.append(timestampFormat.format(new Date(event.timestamp)))
+                .append(' ').append(event.level)
+                .append(" [").append(event.threadName).append("] ")
+                .append(event.loggerName).append(" - ");
+        try {
+            line.append(event.argumentCount == 0 ? event.format : String.format(event.format, event.arguments()));
+        } catch (RuntimeException exception) {
+            line.append(event.format).append(" (unformattable: ").append(exception.getMessage()).append(')');
+        }
+        if (event.suppressed > 0) {
+            line.append(" (").append(event.suppressed).append(" similar messages suppressed)");
+        }
+        out.println(line);
+    }
+}
@@ -0,0 +1,32 @@
+package com.revolut.logging;
+
+class LogEvent {
+
+    volatile long sequence = -1;
+    long timestamp;
+    LogLevel level;
+    String loggerName;
+    String threadName;
+    String format;
+    int argumentCount;
+    Object first;
+    Object second;
+    Object third;
+    long suppressed;
+
+    Object[] arguments() {
+        switch (argumentCount) {
+            case 0: return new Object[0];
+            case 1: return new Object[]{first};
+            case 2: return new Object[]{first, second};
+            default: return new Object[]{first, second, third};
+        }
+    }
+
+    void clear() {
+        first = null;
+        second = null;
+        third = null;
+        format = null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.revolut.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+abstract class LogGate {
+
+    private final AtomicLong suppressed = new AtomicLong();
+
+    abstract boolean tryPass();
+
+    boolean allow() {
+        if (tryPass()) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    long takeSuppressed() {
+        return suppressed.get() == 0 ? 0 : suppressed.getAndSet(0);
+    }
+
+    static LogGate rateLimit(int eventsPerSecond) {
+        return new LogGate() {
+            private final AtomicLong window = new AtomicLong();
+            private final AtomicLong passedInWindow = new AtomicLong();
+
+            @Override
+            boolean tryPass() {
+                long currentWindow = System.nanoTime() / 1_000_000_000L;
+                long knownWindow = window.get();
+                if (currentWindow != knownWindow && window.compareAndSet(knownWindow, currentWindow)) {
+                    passedInWindow.set(0);
+                }
+                return passedInWindow.incrementAndGet() <= eventsPerSecond;
+            }
+        };
+    }
+
+    static LogGate sample(int oneIn) {
+        return new LogGate() {
+            private final AtomicLong seen = new AtomicLong();
+
+            @Override
+            boolean tryPass() {
+                return seen.getAndIncrement() % oneIn == 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,5 @@
+package com.revolut.logging;
+
+public enum LogLevel {
+    TRACE,DEBUG,INFO,WARN,ERROR,OFF;
+}
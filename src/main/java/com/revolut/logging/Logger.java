@@ -0,0 +1,125 @@
+package com.revolut.logging;
+
+/**
+ * Leveled logger writing through a shared {@link AsyncLogWriter}. The level is read once from the {@code log.level}
+ * system property. Calls below the level return before touching any argument, so hot paths should pass arguments
+ * that need no boxing or guard the call with {@link #isDebugEnabled()}.
+ */
+public final class Logger {
+
+    private static final LogLevel level = LogLevel.valueOf(System.getProperty("log.level", LogLevel.INFO.name()));
+    private static final AsyncLogWriter writer = startWriter(Integer.getInteger("log.bufferSize", 8192));
+
+    private final String name;
+    private final LogGate gate;
+
+    private Logger(String name, LogGate gate) {
+        this.name = name;
+        this.gate = gate;
+    }
+
+    public static Logger getLogger(Class<?> type) {
+        return new Logger(type.getSimpleName(), null);
+    }
+
+    public Logger rateLimited(int eventsPerSecond) {
+        return new Logger(name, LogGate.rateLimit(eventsPerSecond));
+    }
+
+    public Logger sampled(int oneIn) {
+        return new Logger(name, LogGate.sample(oneIn));
+    }
+
+    public static long getDroppedEvents() {
+        return writer.getDropped();
+    }
+
+    public boolean isTraceEnabled() {
+        return isEnabled(LogLevel.TRACE);
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public boolean isInfoEnabled() {
+        return isEnabled(LogLevel.INFO);
+    }
+
+    public void trace(String format, Object first) {
+        log(LogLevel.TRACE, format, 1, first, null, null);
+    }
+
+    public void trace(String format, Object first, Object second) {
+        log(LogLevel.TRACE, format, 2, first, second, null);
+    }
+
+    public void trace(String format, Object first, Object second, Object third) {
+        log(LogLevel.TRACE, format, 3, first, second, third);
+    }
+
+    public void debug(String format, Object first) {
+        log(LogLevel.DEBUG, format, 1, first, null, null);
+    }
+
+    public void debug(String format, Object first, Object second) {
+        log(LogLevel.DEBUG, format, 2, first, second, null);
+    }
+
+    public void debug(String format, Object first, Object second, Object third) {
+        log(LogLevel.DEBUG, format, 3, first, second, third);
+    }
+
+    public void info(String message) {
+        log(LogLevel.INFO, message, 0, null, null, null);
+    }
+
+    public void info(String format, Object first) {
+        log(LogLevel.INFO, format, 1, first, null, null);
+    }
+
+    public void info(String format, Object first, Object second) {
+        log(LogLevel.INFO, format, 2, first, second, null);
+    }
+
+    public void info(String format, Object first, Object second, Object third) {
+        log(LogLevel.INFO, format, 3, first, second, third);
+    }
+
+    public void warn(String format, Object first) {
+        log(LogLevel.WARN, format, 1, first, null, null);
+    }
+
+    public void warn(String format, Object first, Object second) {
+        log(LogLevel.WARN, format, 2, first, second, null);
+    }
+
+    public void error(String format, Object first) {
+        log(LogLevel.ERROR, format, 1, first, null, null);
+    }
+
+    public void error(String format, Object first, Object second) {
+        log(LogLevel.ERROR, format, 2, first, second, null);
+    }
+
+    private boolean isEnabled(LogLevel eventLevel) {
+        return eventLevel.compareTo(level) >= 0;
+    }
+
+    private void log(LogLevel eventLevel, String format, int argumentCount, Object first, Object second, Object third) {
+        if (!isEnabled(eventLevel) || (gate != null && !gate.allow())) {
+            return;
+        }
+        long suppressed = gate == null ? 0 : gate.takeSuppressed();
+        writer.publish(eventLevel, name, format, argumentCount, first, second, third, suppressed);
+    }
+
+    private static AsyncLogWriter startWriter(int bufferSize) {
+        AsyncLogWriter writer = new AsyncLogWriter(bufferSize, System.out);
+        Thread thread = new Thread(writer, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::drain, "log-writer-shutdown"));
+        return writer;
+    }
+}
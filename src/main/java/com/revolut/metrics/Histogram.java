@@ -0,0 +1,49 @@
+package com.revolut.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations in buckets whose upper bounds double from one microsecond to about 67 seconds, with one more for anything
+ * longer. Recording finds the bucket from the leading zeros of the value and adds to a {@link LongAdder}, so it takes no
+ * lock and allocates nothing.
+ */
+public final class Histogram implements Metric {
+
+    private static final int BUCKETS = 27;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    Histogram() {
+        for(int bucket = 0; bucket < buckets.length; bucket++){
+            buckets[bucket] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets[Math.min(bucket, BUCKETS)].increment();
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    @Override
+    public void writeTo(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            cumulative += buckets[bucket].sum();
+            String bound = Double.toString((1L << bucket) / 1e6);
+            out.append(name).append("_bucket").append(Metrics.withLabel(labels, "le", bound)).append(' ').append(cumulative).append('\n');
+        }
+        cumulative += buckets[BUCKETS].sum();
+        out.append(name).append("_bucket").append(Metrics.withLabel(labels, "le", "+Inf")).append(' ').append(cumulative).append('\n');
+        out.append(name).append("_sum").append(labels).append(' ').append(sumMicros.sum() / 1e6).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,65 @@
+package com.revolut.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts broken down by a key such as an account number. Only the first {@code maxKeys} keys get their own count, later
+ * ones are added to {@link #OTHER}, so a flood of distinct keys cannot grow it without bound. A scrape writes the
+ * {@code topKeys} largest counts and folds the rest into {@link #OTHER}.
+ */
+public final class KeyedCounter implements Metric {
+
+    public static final String OTHER = "other";
+
+    private final String label;
+    private final int maxKeys;
+    private final int topKeys;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder other = new LongAdder();
+
+    KeyedCounter(String label, int maxKeys, int topKeys) {
+        this.label = label;
+        this.maxKeys = maxKeys;
+        this.topKeys = topKeys;
+    }
+
+    public void increment(String key) {
+        LongAdder count = key == null ? other : counts.get(key);
+        if(count == null){
+            count = counts.size() < maxKeys ? counts.computeIfAbsent(key, ignored -> new LongAdder()) : other;
+        }
+        count.increment();
+    }
+
+    public long get(String key) {
+        LongAdder count = key == null ? null : counts.get(key);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public void writeTo(StringBuilder out, String name, String labels) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for(Map.Entry<String, LongAdder> entry : counts.entrySet()){
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+        }
+        entries.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+        long rest = other.sum();
+        for(int index = 0; index < entries.size(); index++){
+            if(index < topKeys){
+                write(out, name, labels, entries.get(index).getKey(), entries.get(index).getValue());
+            } else {
+                rest += entries.get(index).getValue();
+            }
+        }
+        write(out, name, labels, OTHER, rest);
+    }
+
+    private void write(StringBuilder out, String name, String labels, String key, long count) {
+        out.append(name).append(Metrics.withLabel(labels, label, key)).append(' ').append(count).append('\n');
+    }
+}
@@ -0,0 +1,9 @@
+package com.revolut.metrics;
+
+/**
+ * One series of a metric family, written in the plain text scrape format under the family's name and its own labels.
+ */
+interface Metric {
+
+    void writeTo(StringBuilder out, String name, String labels);
+}
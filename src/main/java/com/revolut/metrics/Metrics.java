@@ -0,0 +1,98 @@
+package com.revolut.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the process's metrics, written out by {@link #scrape()} in the plain text format that Prometheus scrapes.
+ * Like {@link com.revolut.logging.Logger}, metrics are usually held in static fields of the class that records them.
+ * Asking again for a name and labels that are already registered returns the same metric, so every instance of a class
+ * records into one series. Registering takes a lock, recording never does.
+ */
+public final class Metrics {
+
+    private static final int MAX_KEYS = Integer.getInteger("metrics.maxKeys", 10_000);
+    private static final int TOP_KEYS = Integer.getInteger("metrics.topKeys", 20);
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return register(name, help, "counter", "", Counter.class, Counter::new);
+    }
+
+    public static Counter counter(String name, String help, String label, String value) {
+        return register(name, help, "counter", withLabel("", label, value), Counter.class, Counter::new);
+    }
+
+    public static KeyedCounter keyedCounter(String name, String help, String label) {
+        return register(name, help, "counter", "", KeyedCounter.class, () -> new KeyedCounter(label, MAX_KEYS, TOP_KEYS));
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return register(name, help, "histogram", "", Histogram.class, Histogram::new);
+    }
+
+    public static Histogram histogram(String name, String help, String label, String value) {
+        return register(name, help, "histogram", withLabel("", label, value), Histogram.class, Histogram::new);
+    }
+
+    /**
+     * Reads {@code value} at every scrape. Registering the same series again replaces the supplier.
+     */
+    public static synchronized void gauge(String name, String help, String label, String value, LongSupplier supplier) {
+        String labels = label == null ? "" : withLabel("", label, value);
+        family(name, help, "gauge").series.put(labels, (out, metricName, metricLabels) ->
+                out.append(metricName).append(metricLabels).append(' ').append(supplier.getAsLong()).append('\n'));
+    }
+
+    public static synchronized String scrape() {
+        StringBuilder out = new StringBuilder();
+        for(Map.Entry<String, Family> entry : families.entrySet()){
+            Family family = entry.getValue();
+            out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.type).append('\n');
+            for(Map.Entry<String, Metric> series : family.series.entrySet()){
+                series.getValue().writeTo(out, entry.getKey(), series.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    static String withLabel(String labels, String label, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        String pair = label + "=\"" + escaped + "\"";
+        return labels.isEmpty() ? "{" + pair + "}" : labels.substring(0, labels.length() - 1) + "," + pair + "}";
+    }
+
+    private static synchronized <T extends Metric> T register(String name, String help, String type, String labels, Class<T> kind, Supplier<T> factory) {
+        Metric metric = family(name, help, type).series.computeIfAbsent(labels, ignored -> factory.get());
+        if(!kind.isInstance(metric)){
+            throw new IllegalArgumentException("Metric " + name + labels + " is already registered as " + metric.getClass().getSimpleName());
+        }
+        return kind.cast(metric);
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, ignored -> new Family(help, type));
+        if(!family.type.equals(type)){
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static final class Family {
+
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> series = new LinkedHashMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
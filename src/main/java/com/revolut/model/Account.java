@@ -1,20 +1,18 @@
 package com.revolut.model;
 
-import java.math.BigDecimal;
-
 public class Account{
 
 
-    private BigDecimal balance;
+    private long balance;
     private String accountNumber;
     private String name;
     private String email;
 
-    public BigDecimal getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
@@ -0,0 +1,28 @@
+package com.revolut.model;
+
+import java.util.List;
+
+public class AccountPage {
+
+    private List<Account> accounts;
+    private String next;
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(List<Account> accounts) {
+        this.accounts = accounts;
+    }
+
+    /**
+     * Cursor of the following page, or null on the last page.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
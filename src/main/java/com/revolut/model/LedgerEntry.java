@@ -0,0 +1,64 @@
+package com.revolut.model;
+
+public class LedgerEntry {
+
+    private long sequence;
+    private String transactionId;
+    private long amount;
+    private long balance;
+    private long time;
+
+    /**
+     * Position of the entry in its account's ledger, counting from zero without gaps. The ledger of an account that was
+     * dropped to stay within the account bound, or lost with a restart, is started again from zero, so a sequence
+     * names an entry only within one ledger. History cursors carry the ledger they were taken in for that reason.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Positive for money in, negative for money out.
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * Balance of the account right after this entry.
+     */
+    public long getBalance() {
+        return balance;
+    }
+
+    public void setBalance(long balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * Milliseconds since the epoch when the entry was written.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+}
@@ -0,0 +1,28 @@
+package com.revolut.model;
+
+import java.util.List;
+
+public class LedgerPage {
+
+    private List<LedgerEntry> entries;
+    private String next;
+
+    public List<LedgerEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<LedgerEntry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Cursor of the following page, or null once the entries written so far ran out.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,55 @@
+package com.revolut.model;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Amounts are kept as {@code long} minor units of the currency named by the {@code money.currency} system property,
+ * at that currency's fraction digits. Only the API boundary converts to and from the decimal form.
+ */
+public final class Money {
+
+    private static final Currency currency = Currency.getInstance(System.getProperty("money.currency", "EUR"));
+    private static final int scale = Math.max(currency.getDefaultFractionDigits(), 0);
+
+    private Money() {
+    }
+
+    public static Currency getCurrency() {
+        return currency;
+    }
+
+    public static int getScale() {
+        return scale;
+    }
+
+    public static boolean canAdd(long balance, long amount) {
+        long result = balance + amount;
+        return ((balance ^ result) & (amount ^ result)) >= 0;
+    }
+
+    public static boolean canSubtract(long balance, long amount) {
+        long result = balance - amount;
+        return ((balance ^ amount) & (balance ^ result)) >= 0;
+    }
+
+    public static long add(long balance, long amount) {
+        return Math.addExact(balance, amount);
+    }
+
+    public static long subtract(long balance, long amount) {
+        return Math.subtractExact(balance, amount);
+    }
+
+    /**
+     * @throws ArithmeticException if the value has more fraction digits than the currency or does not fit in a long
+     */
+    public static long fromDecimal(BigDecimal value) {
+        return value.movePointRight(scale).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minorUnits) {
+        BigDecimal value = BigDecimal.valueOf(minorUnits, scale).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+}
@@ -1,14 +1,13 @@
 package com.revolut.model;
 
-import java.math.BigDecimal;
-
 public class Transaction {
 
     private TransactionType transactionType;
     private String sender;
     private String receiver;
     private String id;
-    private BigDecimal amount;
+    private long amount;
+    private String idempotencyKey;
 
     public String getSender() {
         return sender;
@@ -26,11 +25,11 @@ public class Transaction {
         this.receiver = receiver;
     }
 
-    public BigDecimal getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(BigDecimal amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
@@ -49,4 +48,12 @@ public class Transaction {
     public void setId(String id) {
         this.id = id;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
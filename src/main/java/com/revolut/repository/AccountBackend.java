@@ -0,0 +1,11 @@
+package com.revolut.repository;
+
+import com.revolut.id.IdGenerator;
+
+public enum AccountBackend {
+    MAP,PACKED;
+
+    public AccountRepository newRepository(IdGenerator idGenerator) {
+        return this == PACKED ? new PackedAccountRepository(idGenerator) : new MapAccountRepository(idGenerator);
+    }
+}
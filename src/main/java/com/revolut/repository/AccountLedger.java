@@ -0,0 +1,268 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.metrics.Counter;
+import com.revolut.metrics.Metrics;
+import com.revolut.model.LedgerEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The entries each account's balance went through, kept in memory as parallel long arrays per account: transaction id,
+ * signed amount, resulting balance and time, 32 bytes an entry. An entry's sequence is its position in the account's
+ * ledger, so reading from a sequence is an array index and reading from a time is a binary search, as times never go
+ * back within one account. Either way a read costs what it returns, not what the ledger holds.
+ * <p>
+ * Only the newest {@code maxEntries} entries of an account are kept. When the arrays hold twice that, the newest half
+ * is copied into new ones, so older entries are dropped in bulk and an append is still constant time on average.
+ * Appends to one account are serialized, but as only the worker owning an account changes it, they never contend.
+ * Readers take no lock: the arrays are replaced, never shrunk in place, and an entry is written before the size that
+ * makes it visible.
+ * <p>
+ * At most {@code maxAccounts} accounts have a ledger. Adding one more drops the ledger of an account not written to
+ * lately, found by going round the accounts in the order they were added and passing over, once, each one written to
+ * again since it was added or last passed. A ledger is dropped under its own lock and an append that finds it dropped
+ * goes to the account's next ledger, so no entry is written into a ledger on its way out.
+ * <p>
+ * The ledger is not journaled and is not rebuilt on replay, so it holds only what was processed since the service
+ * started. An account's sequences count from zero again in a ledger started after its last one was dropped or after a
+ * restart. Every ledger has a random epoch, and reading with the epoch of an earlier ledger of the account is refused,
+ * so a position taken in one ledger is never read against another.
+ */
+public class AccountLedger {
+
+    private static final Counter evictedLedgers = Metrics.counter("ledger_evicted_accounts_total", "Account ledgers dropped to stay within the account bound");
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int maxEntries;
+    private final int maxAccounts;
+    private final Map<String, Ledger> ledgers = new ConcurrentHashMap<>();
+    private final Queue<String> evictionOrder = new ArrayDeque<>();
+
+    public AccountLedger(int maxEntries) {
+        this(maxEntries, Integer.MAX_VALUE);
+    }
+
+    public AccountLedger(int maxEntries, int maxAccounts) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxAccounts = Math.max(1, maxAccounts);
+    }
+
+    public void record(String accountNumber, String transactionId, long amount, long balance) {
+        long id = Ids.parse(transactionId);
+        long time = System.currentTimeMillis();
+        while(true){
+            Ledger ledger = ledgers.get(accountNumber);
+            if(ledger == null){
+                ledger = addLedger(accountNumber);
+            }
+            if(ledger.append(id, amount, balance, time)){
+                return;
+            }
+        }
+    }
+
+    int accountCount() {
+        return ledgers.size();
+    }
+
+    private Ledger addLedger(String accountNumber) {
+        synchronized (evictionOrder) {
+            Ledger ledger = ledgers.get(accountNumber);
+            if(ledger != null){
+                return ledger;
+            }
+            while(ledgers.size() >= maxAccounts){
+                evictLedger();
+            }
+            ledger = new Ledger();
+            ledgers.put(accountNumber, ledger);
+            evictionOrder.add(accountNumber);
+            return ledger;
+        }
+    }
+
+    private void evictLedger() {
+        while(true){
+            String accountNumber = evictionOrder.poll();
+            Ledger ledger = ledgers.get(accountNumber);
+            synchronized (ledger) {
+                if(ledger.written){
+                    ledger.written = false;
+                    evictionOrder.add(accountNumber);
+                } else {
+                    ledger.dropped = true;
+                    ledgers.remove(accountNumber);
+                    evictedLedgers.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} entries of the account, oldest first, from {@code fromSequence} or from the oldest
+     * one still kept if that was dropped already.
+     */
+    public List<LedgerEntry> read(String accountNumber, long fromSequence, int limit) {
+        Ledger ledger = ledgers.get(accountNumber);
+        if(ledger == null){
+            return Collections.emptyList();
+        }
+        return read(ledger, fromSequence, limit);
+    }
+
+    /**
+     * Same as {@link #read(String, long, int)}, but returns null unless the account's ledger is still the one of
+     * {@code epoch}. An account without a ledger has epoch zero.
+     */
+    public List<LedgerEntry> read(String accountNumber, long epoch, long fromSequence, int limit) {
+        Ledger ledger = ledgers.get(accountNumber);
+        if(ledger == null){
+            return epoch == 0 ? Collections.emptyList() : null;
+        }
+        return ledger.epoch == epoch ? read(ledger, fromSequence, limit) : null;
+    }
+
+    /**
+     * Returns the epoch of the account's ledger, zero if it has none.
+     */
+    public long epochOf(String accountNumber) {
+        Ledger ledger = ledgers.get(accountNumber);
+        return ledger == null ? 0 : ledger.epoch;
+    }
+
+    private List<LedgerEntry> read(Ledger ledger, long fromSequence, int limit) {
+        long end = ledger.size;
+        Entries entries = ledger.entries;
+        long from = Math.max(fromSequence, entries.firstSequence);
+        List<LedgerEntry> found = new ArrayList<>((int) Math.max(0, Math.min(limit, end - from)));
+        for(long sequence = from; sequence < end && found.size() < limit; sequence++){
+            found.add(entries.entryAt(sequence));
+        }
+        return found;
+    }
+
+    /**
+     * Returns the sequence of the account's first entry kept that was written at or after {@code sinceMillis}, or the
+     * sequence the next entry will get if there is none.
+     */
+    public long sequenceAt(String accountNumber, long sinceMillis) {
+        Ledger ledger = ledgers.get(accountNumber);
+        if(ledger == null){
+            return 0;
+        }
+        long high = ledger.size;
+        Entries entries = ledger.entries;
+        long low = entries.firstSequence;
+        while(low < high){
+            long middle = (low + high) >>> 1;
+            if(entries.times[entries.indexOf(middle)] < sinceMillis){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return maxEntries + " ledger entries per account" + (maxAccounts == Integer.MAX_VALUE ? "" : " for up to " + maxAccounts + " accounts");
+    }
+
+    private final class Ledger {
+
+        private final long epoch = newEpoch();
+        private volatile Entries entries = new Entries(0, INITIAL_CAPACITY);
+        private volatile long size;
+        private volatile boolean written;
+        private boolean dropped;
+        private long lastTime;
+
+        /**
+         * Returns false, without appending, once the ledger has been dropped.
+         */
+        private synchronized boolean append(long transactionId, long amount, long balance, long time) {
+            if(dropped){
+                return false;
+            }
+            long sequence = size;
+            if(!written && sequence > 0){
+                written = true;
+            }
+            Entries current = entries;
+            if(current.indexOf(sequence) == current.ids.length){
+                current = grow(current, sequence);
+                entries = current;
+            }
+            lastTime = Math.max(lastTime, time);
+            int index = current.indexOf(sequence);
+            current.ids[index] = transactionId;
+            current.amounts[index] = amount;
+            current.balances[index] = balance;
+            current.times[index] = lastTime;
+            size = sequence + 1;
+            return true;
+        }
+
+        private Entries grow(Entries current, long end) {
+            long kept = Math.min(end - current.firstSequence, maxEntries);
+            long firstSequence = end - kept;
+            Entries grown = new Entries(firstSequence, (int) Math.max(INITIAL_CAPACITY, Math.min(kept * 2, (long) maxEntries * 2)));
+            int from = current.indexOf(firstSequence);
+            System.arraycopy(current.ids, from, grown.ids, 0, (int) kept);
+            System.arraycopy(current.amounts, from, grown.amounts, 0, (int) kept);
+            System.arraycopy(current.balances, from, grown.balances, 0, (int) kept);
+            System.arraycopy(current.times, from, grown.times, 0, (int) kept);
+            return grown;
+        }
+    }
+
+    private static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while(epoch == 0);
+        return epoch;
+    }
+
+    private static final class Entries {
+
+        private final long firstSequence;
+        private final long[] ids;
+        private final long[] amounts;
+        private final long[] balances;
+        private final long[] times;
+
+        private Entries(long firstSequence, int capacity) {
+            this.firstSequence = firstSequence;
+            this.ids = new long[capacity];
+            this.amounts = new long[capacity];
+            this.balances = new long[capacity];
+            this.times = new long[capacity];
+        }
+
+        private int indexOf(long sequence) {
+            return (int) (sequence - firstSequence);
+        }
+
+        private LedgerEntry entryAt(long sequence) {
+            int index = indexOf(sequence);
+            LedgerEntry entry = new LedgerEntry();
+            entry.setSequence(sequence);
+            entry.setTransactionId(Ids.format(ids[index]));
+            entry.setAmount(amounts[index]);
+            entry.setBalance(balances[index]);
+            entry.setTime(times[index]);
+            return entry;
+        }
+    }
+}
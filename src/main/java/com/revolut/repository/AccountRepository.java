@@ -2,159 +2,53 @@ package com.revolut.repository;
 
 import com.revolut.model.Account;
 
-import java.math.BigDecimal;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
-
-public class AccountRepository {
-
-    private Map<String,LockedAccount> accountNumberAccount = new ConcurrentHashMap<>();
-
-    public List<Account> create(List<Account> accounts) {
-        List<Account> created = new ArrayList<>();
-        for(Account original : accounts){
-            LockedAccount lockedAccount = new LockedAccount(original);
-            accountNumberAccount.put(lockedAccount.getAccountNumber(),lockedAccount);
-            created.add(lockedAccount.copy());
-        }
-        return created;
-    }
-
-    public List<Account> all() {
-        return accountNumberAccount.values().stream().map(LockedAccount::copy).collect(Collectors.toList());
-    }
-
-    public Map<String,Account> getAccounts(List<String> accounts, boolean lock){
-        String threadName = Thread.currentThread().getName();
-        System.out.printf("Getting accounts %s lock = %s by thread %s\n", accounts, lock,threadName);
-
-        if(!lock){
-            return getAccountsWithoutLock(accounts);
-        }
-        return getAccountsWithLock(accounts);
-    }
-
-    private Map<String, Account> getAccountsWithLock(List<String> accounts) {
-        String threadName = Thread.currentThread().getName();
-
-        Map<String,Account> foundAccounts = new HashMap<>();
-        List<LockedAccount> lockedAccounts = new ArrayList<>();
-
-        Collections.sort(accounts);
-
-        boolean allSuccessful = true;
-        for(String accountNumber : accounts){
-            LockedAccount actualAccount = accountNumberAccount.get(accountNumber);
-            if(actualAccount != null && lockAccount(actualAccount)){
-                System.out.printf("Getting account %s with lock by thread %s\n", accountNumber, threadName);
-                foundAccounts.put(accountNumber,actualAccount.copy());
-                lockedAccounts.add(actualAccount);
-            }else{
-                System.out.printf("Couldn't get account %s with lock by thread %s\n", accountNumber, threadName);
-                allSuccessful = false;
-                break;
-            }
-        }
-
-        if (!allSuccessful) {
-            for (LockedAccount lockedAccount : lockedAccounts) {
-                unlockAccount(lockedAccount);
-            }
-            return new HashMap<>();
-        }
-        return foundAccounts;
-    }
-
-    private Map<String, Account> getAccountsWithoutLock(List<String> accounts) {
-        String threadName = Thread.currentThread().getName();
-        Map<String,Account> foundAccounts = new HashMap<>();
-        for(String accountNumber : accounts) {
-            LockedAccount actualAccount = accountNumberAccount.get(accountNumber);
-            if(actualAccount != null) {
-                System.out.printf("Getting account %s without lock by thread %s\n", accountNumber, threadName);
-                foundAccounts.put(accountNumber, actualAccount.copy());
-            }
-        }
-        return foundAccounts;
-    }
-
-    public boolean updateAccounts(List<Account> accounts){
-        String threadName = Thread.currentThread().getName();
-
-        Map<Account,LockedAccount> foundAccounts = new HashMap<>();
-        for(Account account : accounts){
-            LockedAccount actualAccount = accountNumberAccount.get(account.getAccountNumber());
-            if(actualAccount != null && isLocked(actualAccount)){
-                foundAccounts.put(account,actualAccount);
-            } else{
-                System.out.printf("Unable to update account %s by thread %s\n", account.getAccountNumber(), threadName);
-                return false;
-            }
-        }
-        for(Map.Entry<Account, LockedAccount> accountPair : foundAccounts.entrySet()){
-            System.out.printf("Updating account %s by thread %s\n", accountPair.getKey().getAccountNumber(), threadName);
-            Account account = accountPair.getKey();
-            LockedAccount actualAccount = accountPair.getValue();
-            actualAccount.copyFrom(account);
-        }
-        return true;
-    }
-
-    public void unlockAccounts(List<Account> accounts){
-        for(Account account : accounts){
-            LockedAccount actualAccount = accountNumberAccount.get(account.getAccountNumber());
-            unlockAccount(actualAccount);
-        }
-    }
-
-    private boolean lockAccount(LockedAccount account){
-        return account.getIsBeingUpdated().compareAndSet(false,true);
-    }
-
-    private boolean unlockAccount(LockedAccount account){
-        return account.getIsBeingUpdated().compareAndSet(true,false);
-    }
-
-    private boolean isLocked(LockedAccount account){
-        return account.getIsBeingUpdated().get();
-    }
-
-
-    private class LockedAccount extends Account{
-
-        private AtomicBoolean isBeingUpdated = new AtomicBoolean(false);
-
-        private LockedAccount(){
-            this.setAccountNumber(UUID.randomUUID().toString());
-            this.setBalance(BigDecimal.ZERO);
-        }
-
-        private LockedAccount(Account account){
-            this();
-            this.copyFrom(account);
-            this.setBalance(BigDecimal.ZERO);
-        }
-
-        private Account copy(){
-            Account clone = new Account();
-            clone.setBalance(getBalance());
-            clone.setAccountNumber(getAccountNumber());
-            clone.setName(getName());
-            clone.setEmail(getEmail());
-            return clone;
-        }
-
-        private void copyFrom(Account account) {
-            this.setBalance(account.getBalance());
-            this.setName(account.getName());
-            this.setEmail(account.getEmail());
-        }
-
-        private AtomicBoolean getIsBeingUpdated() {
-            return isBeingUpdated;
-        }
-    }
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface AccountRepository {
+
+    List<Account> create(List<Account> accounts);
+
+    /**
+     * Puts back accounts with the numbers and balances they had, without journaling them again. An account number that
+     * is already there is left as it is.
+     */
+    void restore(List<Account> accounts);
+
+    default List<Account> all() {
+        List<Account> accounts = new ArrayList<>();
+        scan(0, Integer.MAX_VALUE, accounts::add);
+        return accounts;
+    }
+
+    /**
+     * Hands accounts to the consumer in the order they were created, starting at {@code position}, until
+     * {@code limit} accounts were handed or none are left. Returns the position to continue from. Positions never
+     * move, so accounts created between two calls are picked up by the later one.
+     */
+    int scan(int position, int limit, Consumer<Account> consumer);
+
+    /**
+     * Reads the accounts that exist, each whole and without a lock. The copies remember the version they were read at,
+     * so they can be changed and handed to {@link #commit(List)}.
+     */
+    Map<String,Account> getAccounts(List<String> accounts);
+
+    /**
+     * Reads accounts for callers that do not own them, without taking locks or holding up writers. Every account is
+     * read whole, and with {@code pointInTime} all of them are as they were at one moment, so no commit of several of
+     * them is seen half done. Reads are retried only a bounded number of times while commits are changing the
+     * accounts, and null is returned if that was not enough.
+     */
+    Map<String,Account> readAccounts(List<String> accounts, boolean pointInTime);
+
+    /**
+     * Writes back accounts read through {@link #getAccounts(List)} if none of them was committed since it was read.
+     * Either all of them are written or none is, and readers never see some written and others not. Returns false when
+     * one had changed, so the caller can read again and retry. After a commit the copies are at the new version and
+     * can be committed again.
+     */
+    boolean commit(List<Account> accounts);
 }
@@ -0,0 +1,61 @@
+package com.revolut.repository;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the transactions accepted but not yet finished or rejected. Each accepted transaction holds one permit until it
+ * completes, so the waiting queue and the memory behind it cannot grow past {@code capacity} however fast requests come
+ * in. Transactions queued back for a retry keep the permit they hold and are never refused.
+ */
+public class AdmissionControl {
+
+    private final int capacity;
+    private final AdmissionPolicy policy;
+    private final long maxBlockMillis;
+    private final Semaphore permits;
+
+    public AdmissionControl(int capacity, AdmissionPolicy policy, long maxBlockMillis) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.maxBlockMillis = maxBlockMillis;
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     * Returns how many of the {@code requested} transactions may be accepted, from none to all of them. A batch larger
+     * than the capacity can never be accepted whole, so {@link AdmissionPolicy#REJECT} and {@link AdmissionPolicy#BLOCK}
+     * refuse it at once instead of waiting for room that cannot come.
+     */
+    int admit(int requested) throws InterruptedException {
+        if(requested == 0 || (requested > capacity && policy != AdmissionPolicy.PARTIAL)){
+            return 0;
+        }
+        switch (policy) {
+            case BLOCK:
+                return permits.tryAcquire(requested, maxBlockMillis, TimeUnit.MILLISECONDS) ? requested : 0;
+            case PARTIAL:
+                while(true){
+                    int granted = Math.min(requested, permits.availablePermits());
+                    if(granted <= 0 || permits.tryAcquire(granted)){
+                        return Math.max(granted, 0);
+                    }
+                }
+            default:
+                return permits.tryAcquire(requested) ? requested : 0;
+        }
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    public AdmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return capacity + " transactions, " + policy + (policy == AdmissionPolicy.BLOCK ? " for up to " + maxBlockMillis + " ms" : "");
+    }
+}
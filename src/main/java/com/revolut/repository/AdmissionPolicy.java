@@ -0,0 +1,13 @@
+package com.revolut.repository;
+
+/**
+ * What {@link AdmissionControl} does with transactions that do not fit in the waiting queue.
+ */
+public enum AdmissionPolicy {
+    /** Refuses the whole batch at once, so the client retries it later. */
+    REJECT,
+    /** Waits a bounded time for room for the whole batch, then refuses it. A batch over the capacity is refused at once. */
+    BLOCK,
+    /** Accepts as much of the batch as fits and refuses the rest. */
+    PARTIAL
+}
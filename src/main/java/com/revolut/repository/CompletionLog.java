@@ -0,0 +1,50 @@
+package com.revolut.repository;
+
+/**
+ * Ids of completed transactions in completion order, with the time they completed, as two longs per entry in a ring
+ * that doubles when full. Any thread may add, the retention thread takes from the head.
+ */
+final class CompletionLog {
+
+    private long[] entries = new long[2 * 1024];
+    private int head;
+    private int size;
+
+    synchronized void add(long id, long completedAt) {
+        int capacity = entries.length / 2;
+        if(size == capacity){
+            long[] grown = new long[entries.length * 2];
+            for(int index = 0; index < size; index++){
+                System.arraycopy(entries, ((head + index) % capacity) * 2, grown, index * 2, 2);
+            }
+            entries = grown;
+            head = 0;
+            capacity *= 2;
+        }
+        int tail = ((head + size) % capacity) * 2;
+        entries[tail] = id;
+        entries[tail + 1] = completedAt;
+        size++;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the completion time of the oldest entry, or {@link Long#MAX_VALUE} when empty
+     */
+    synchronized long oldestCompletedAt() {
+        return size == 0 ? Long.MAX_VALUE : entries[head * 2 + 1];
+    }
+
+    /**
+     * Removes the oldest entry and returns its id. Only called when not empty.
+     */
+    synchronized long poll() {
+        long id = entries[head * 2];
+        head = (head + 1) % (entries.length / 2);
+        size--;
+        return id;
+    }
+}
@@ -0,0 +1,77 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.model.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests waiting for transactions to complete, by transaction id. Completing a transaction hands its status to the
+ * waiters registered for it and forgets them, so nothing is kept for ids nobody waits on.
+ */
+class CompletionWaiters {
+
+    private final Map<String, List<Waiter>> waitersById = new ConcurrentHashMap<>();
+
+    Waiter newWaiter(int count) {
+        return new Waiter(count);
+    }
+
+    void register(String id, Waiter waiter) {
+        waitersById.compute(id, (key, waiters) -> {
+            List<Waiter> registered = waiters == null ? new ArrayList<>(1) : new ArrayList<>(waiters);
+            registered.add(waiter);
+            return registered;
+        });
+    }
+
+    void unregister(String id, Waiter waiter) {
+        waitersById.computeIfPresent(id, (key, waiters) -> {
+            List<Waiter> remaining = new ArrayList<>(waiters);
+            remaining.remove(waiter);
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+
+    void completed(long id, TransactionStatus status) {
+        if(waitersById.isEmpty()){
+            return;
+        }
+        String transactionNumber = Ids.format(id);
+        List<Waiter> waiters = waitersById.remove(transactionNumber);
+        if(waiters != null){
+            for(Waiter waiter : waiters){
+                waiter.completed(transactionNumber, status);
+            }
+        }
+    }
+
+    static final class Waiter {
+
+        private final Map<String, TransactionStatus> statuses = new ConcurrentHashMap<>();
+        private final CountDownLatch remaining;
+
+        private Waiter(int count) {
+            this.remaining = new CountDownLatch(count);
+        }
+
+        void completed(String id, TransactionStatus status) {
+            if(statuses.putIfAbsent(id, status) == null){
+                remaining.countDown();
+            }
+        }
+
+        boolean await(long timeoutMillis) throws InterruptedException {
+            return remaining.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        TransactionStatus statusOf(String id) {
+            return statuses.get(id);
+        }
+    }
+}
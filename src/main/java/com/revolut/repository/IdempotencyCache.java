@@ -0,0 +1,79 @@
+package com.revolut.repository;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids of recently accepted transactions by the idempotency key they were sent with, so a retried submission gets the
+ * original id back instead of being accepted twice. A key is remembered for {@code expiryMillis}, and once more than
+ * {@code maxKeys} are remembered the oldest are forgotten early. Lookups take no lock, only remembering a new key does.
+ */
+public class IdempotencyCache {
+
+    private final int maxKeys;
+    private final long expiryMillis;
+    private final Map<String, Entry> entriesByKey = new ConcurrentHashMap<>();
+    private final ArrayDeque<Entry> insertionOrder = new ArrayDeque<>();
+
+    public IdempotencyCache(int maxKeys, long expiryMillis) {
+        this.maxKeys = maxKeys;
+        this.expiryMillis = expiryMillis;
+    }
+
+    /**
+     * Returns the id remembered for the key, or null if there is none or it has expired.
+     */
+    String get(String key) {
+        Entry entry = entriesByKey.get(key);
+        return entry == null || entry.isExpired(System.currentTimeMillis()) ? null : entry.id;
+    }
+
+    /**
+     * Remembers the id for the key unless a live id is already remembered, and returns that id if there is one.
+     */
+    String putIfAbsent(String key, String id) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key, id, now + expiryMillis);
+        Entry existing;
+        while((existing = entriesByKey.putIfAbsent(key, entry)) != null){
+            if(!existing.isExpired(now)){
+                return existing.id;
+            }
+            if(entriesByKey.replace(key, existing, entry)){
+                break;
+            }
+        }
+        synchronized (insertionOrder) {
+            insertionOrder.add(entry);
+            Entry oldest;
+            while((oldest = insertionOrder.peek()) != null && (insertionOrder.size() > maxKeys || oldest.isExpired(now))){
+                insertionOrder.poll();
+                entriesByKey.remove(oldest.key, oldest);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return maxKeys + " keys for " + expiryMillis + " ms";
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final String id;
+        private final long expiresAt;
+
+        private Entry(String key, String id, long expiresAt) {
+            this.key = key;
+            this.id = id;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.revolut.repository;
+
+import com.revolut.journal.Journal;
+import com.revolut.model.Account;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Journals created accounts and returns them only once they are durable. Balance changes are journaled as the
+ * outcomes of transactions by {@link TransactionRepository}, so updates go straight to the delegate.
+ */
+public class JournaledAccountRepository implements AccountRepository {
+
+    private final AccountRepository delegate;
+    private final Journal journal;
+
+    public JournaledAccountRepository(AccountRepository delegate, Journal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public List<Account> create(List<Account> accounts) {
+        List<Account> created = delegate.create(accounts);
+        long position = 0;
+        for(Account account : created){
+            position = journal.accountCreated(account);
+        }
+        journal.awaitDurable(position);
+        return created;
+    }
+
+    @Override
+    public void restore(List<Account> accounts) {
+        delegate.restore(accounts);
+    }
+
+    @Override
+    public int scan(int position, int limit, Consumer<Account> consumer) {
+        return delegate.scan(position, limit, consumer);
+    }
+
+    @Override
+    public Map<String, Account> getAccounts(List<String> accounts) {
+        return delegate.getAccounts(accounts);
+    }
+
+    @Override
+    public Map<String, Account> readAccounts(List<String> accounts, boolean pointInTime) {
+        return delegate.readAccounts(accounts, pointInTime);
+    }
+
+    @Override
+    public boolean commit(List<Account> accounts) {
+        return delegate.commit(accounts);
+    }
+}
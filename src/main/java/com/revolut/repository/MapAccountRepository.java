@@ -0,0 +1,259 @@
+package com.revolut.repository;
+
+import com.revolut.id.IdGenerator;
+import com.revolut.id.Ids;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.logging.Logger;
+import com.revolut.metrics.KeyedCounter;
+import com.revolut.metrics.Metrics;
+import com.revolut.model.Account;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Each account's balance, name and email are one immutable {@link State} behind a volatile reference, replaced whole
+ * on commit, so any read of a single account sees one commit or the next and never a mix. Next to it is a version that
+ * a commit moves from even to odd with a compare and set, if it is still the version the account was read at, and to
+ * the next even number once the new states are in. That one word is both the optimistic check for writers and, as in a
+ * seqlock, what lets readers of several accounts tell a point in time read from one that crossed a commit.
+ */
+public class MapAccountRepository implements AccountRepository {
+
+    private static final Logger log = Logger.getLogger(MapAccountRepository.class);
+    private static final Logger conflictLog = log.rateLimited(10);
+    private static final KeyedCounter commitConflicts = Metrics.keyedCounter("account_commit_conflicts_total", "Commits that found an account changed since it was read, by account", "account");
+    private static final AtomicIntegerFieldUpdater<StoredAccount> VERSION = AtomicIntegerFieldUpdater.newUpdater(StoredAccount.class, "version");
+    private static final int SNAPSHOT_ATTEMPTS = 64;
+
+    private final IdGenerator idGenerator;
+    private Map<String,StoredAccount> accountNumberAccount = new ConcurrentHashMap<>();
+    private final List<StoredAccount> creationOrder = new ArrayList<>();
+
+    public MapAccountRepository() {
+        this(new TimeOrderedIdGenerator(0));
+    }
+
+    public MapAccountRepository(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    @Override
+    public List<Account> create(List<Account> accounts) {
+        List<Account> created = new ArrayList<>();
+        for(Account original : accounts){
+            StoredAccount storedAccount = new StoredAccount(Ids.format(idGenerator.nextId()), original, 0);
+            accountNumberAccount.put(storedAccount.accountNumber, storedAccount);
+            addInCreationOrder(storedAccount);
+            created.add(new VersionedAccount(storedAccount));
+        }
+        return created;
+    }
+
+    @Override
+    public void restore(List<Account> accounts) {
+        for(Account original : accounts){
+            StoredAccount storedAccount = new StoredAccount(original.getAccountNumber(), original, original.getBalance());
+            if(Ids.isId(original.getAccountNumber())){
+                idGenerator.advancePast(Ids.parse(original.getAccountNumber()));
+            }
+            if(accountNumberAccount.putIfAbsent(storedAccount.accountNumber, storedAccount) != null){
+                log.warn("Account %s is already restored", storedAccount.accountNumber);
+                continue;
+            }
+            addInCreationOrder(storedAccount);
+        }
+    }
+
+    private void addInCreationOrder(StoredAccount account) {
+        synchronized (creationOrder) {
+            creationOrder.add(account);
+        }
+    }
+
+    @Override
+    public int scan(int position, int limit, Consumer<Account> consumer) {
+        List<StoredAccount> page;
+        synchronized (creationOrder) {
+            int end = (int) Math.min(creationOrder.size(), (long) position + limit);
+            if(position >= end){
+                return position;
+            }
+            page = new ArrayList<>(creationOrder.subList(position, end));
+        }
+        for(StoredAccount account : page){
+            consumer.accept(account.state.toAccount(account.accountNumber));
+        }
+        return position + page.size();
+    }
+
+    @Override
+    public Map<String,Account> getAccounts(List<String> accounts){
+        if(log.isTraceEnabled()) {
+            log.trace("Getting accounts %s", accounts);
+        }
+        Map<String,Account> foundAccounts = new HashMap<>();
+        for(String accountNumber : accounts) {
+            StoredAccount storedAccount = accountNumberAccount.get(accountNumber);
+            if(storedAccount != null) {
+                foundAccounts.put(accountNumber, new VersionedAccount(storedAccount));
+            }
+        }
+        return foundAccounts;
+    }
+
+    @Override
+    public Map<String, Account> readAccounts(List<String> accounts, boolean pointInTime) {
+        List<StoredAccount> found = new ArrayList<>();
+        for(String accountNumber : accounts){
+            StoredAccount storedAccount = accountNumberAccount.get(accountNumber);
+            if(storedAccount != null){
+                found.add(storedAccount);
+            }
+        }
+        State[] states = new State[found.size()];
+        if(!pointInTime){
+            for(int index = 0; index < states.length; index++){
+                states[index] = found.get(index).state;
+            }
+            return toAccounts(found, states);
+        }
+        int[] versions = new int[found.size()];
+        for(int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++){
+            if(readAll(found, versions, states)){
+                return toAccounts(found, states);
+            }
+            Thread.yield();
+        }
+        return null;
+    }
+
+    private static boolean readAll(List<StoredAccount> accounts, int[] versions, State[] states) {
+        for(int index = 0; index < states.length; index++){
+            StoredAccount account = accounts.get(index);
+            versions[index] = account.version;
+            if((versions[index] & 1) != 0){
+                return false;
+            }
+            states[index] = account.state;
+        }
+        for(int index = 0; index < states.length; index++){
+            if(accounts.get(index).version != versions[index]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Account> toAccounts(List<StoredAccount> accounts, State[] states) {
+        Map<String,Account> foundAccounts = new HashMap<>();
+        for(int index = 0; index < states.length; index++){
+            String accountNumber = accounts.get(index).accountNumber;
+            foundAccounts.put(accountNumber, states[index].toAccount(accountNumber));
+        }
+        return foundAccounts;
+    }
+
+    @Override
+    public boolean commit(List<Account> accounts){
+        int claimed = 0;
+        for(; claimed < accounts.size(); claimed++){
+            VersionedAccount account = versioned(accounts.get(claimed));
+            if((account.version & 1) != 0 || !VERSION.compareAndSet(account.stored, account.version, account.version + 1)){
+                break;
+            }
+        }
+        if(claimed < accounts.size()){
+            for(int index = 0; index < claimed; index++){
+                VersionedAccount account = (VersionedAccount) accounts.get(index);
+                account.stored.version = account.version;
+            }
+            String accountNumber = accounts.get(claimed).getAccountNumber();
+            conflictLog.debug("Account %s changed since it was read", accountNumber);
+            commitConflicts.increment(accountNumber);
+            return false;
+        }
+        for(Account account : accounts){
+            log.trace("Committing account %s", account.getAccountNumber());
+            ((VersionedAccount) account).stored.state = new State(account);
+        }
+        for(Account account : accounts){
+            VersionedAccount versionedAccount = (VersionedAccount) account;
+            versionedAccount.version += 2;
+            versionedAccount.stored.version = versionedAccount.version;
+        }
+        return true;
+    }
+
+    private VersionedAccount versioned(Account account) {
+        if(account instanceof VersionedAccount && ((VersionedAccount) account).repository() == this){
+            return (VersionedAccount) account;
+        }
+        throw new IllegalArgumentException("Account " + account.getAccountNumber() + " was not read from this repository");
+    }
+
+    private static final class StoredAccount {
+
+        private final String accountNumber;
+        volatile int version;
+        private volatile State state;
+
+        private StoredAccount(String accountNumber, Account account, long balance){
+            this.accountNumber = accountNumber;
+            this.state = new State(balance, account.getName(), account.getEmail());
+        }
+    }
+
+    private static final class State {
+
+        private final long balance;
+        private final String name;
+        private final String email;
+
+        private State(long balance, String name, String email) {
+            this.balance = balance;
+            this.name = name;
+            this.email = email;
+        }
+
+        private State(Account account) {
+            this(account.getBalance(), account.getName(), account.getEmail());
+        }
+
+        private Account toAccount(String accountNumber) {
+            Account account = new Account();
+            copyTo(account, accountNumber);
+            return account;
+        }
+
+        private void copyTo(Account account, String accountNumber) {
+            account.setBalance(balance);
+            account.setAccountNumber(accountNumber);
+            account.setName(name);
+            account.setEmail(email);
+        }
+    }
+
+    /**
+     * A copy of an account that remembers where it was read from and at which version, so committing it needs no
+     * lookup. The version is read before the state, so a commit that lands in between makes this copy's own commit
+     * fail instead of overwriting it.
+     */
+    private final class VersionedAccount extends Account {
+
+        private final StoredAccount stored;
+        private int version;
+
+        private VersionedAccount(StoredAccount stored) {
+            this.stored = stored;
+            this.version = stored.version;
+            stored.state.copyTo(this, stored.accountNumber);
+        }
+
+        private MapAccountRepository repository() {
+            return MapAccountRepository.this;
+        }
+    }
+}
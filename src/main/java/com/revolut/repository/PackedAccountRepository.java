@@ -0,0 +1,436 @@
+package com.revolut.repository;
+
+import com.revolut.id.IdGenerator;
+import com.revolut.id.Ids;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.logging.Logger;
+import com.revolut.metrics.KeyedCounter;
+import com.revolut.metrics.Metrics;
+import com.revolut.model.Account;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Keeps accounts in chunks of parallel primitive arrays instead of an object graph per account. An account number is
+ * kept as its 64-bit id and indexed in an open addressing table that points to the account's slot.
+ * Names and emails are appended as UTF-8 records to {@link RecordArena} pages, and a slot keeps the offset of its
+ * latest record. Creation is serialized on the repository, reads and commits go through the atomic arrays.
+ * A commit moves a slot's version from the even version its copy was read at to odd with a compare and set, writes the
+ * balance and record, and moves it to the next even version. Readers that do not own the account use the same
+ * version, as in a seqlock, to tell a whole read from a torn one.
+ */
+public class PackedAccountRepository implements AccountRepository {
+
+    private static final Logger log = Logger.getLogger(PackedAccountRepository.class);
+    private static final Logger conflictLog = log.rateLimited(10);
+    private static final KeyedCounter commitConflicts = Metrics.keyedCounter("account_commit_conflicts_total", "Commits that found an account changed since it was read, by account", "account");
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int NO_SLOT = -1;
+    private static final int SNAPSHOT_ATTEMPTS = 64;
+
+    private final IdGenerator idGenerator;
+    private final RecordArena records = new RecordArena();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile Index index = new Index(1 << 10);
+    private volatile int size;
+
+    public PackedAccountRepository() {
+        this(new TimeOrderedIdGenerator(0));
+    }
+
+    public PackedAccountRepository(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    @Override
+    public synchronized List<Account> create(List<Account> accounts) {
+        List<Account> created = new ArrayList<>();
+        for(Account original : accounts){
+            long id = idGenerator.nextId();
+            int slot = addSlot(id, original, 0);
+            created.add(new PackedAccount(slot, Ids.format(id)));
+        }
+        return created;
+    }
+
+    @Override
+    public synchronized void restore(List<Account> accounts) {
+        for(Account original : accounts){
+            String accountNumber = original.getAccountNumber();
+            if(!Ids.isId(accountNumber)){
+                log.warn("Unable to restore account %s", accountNumber);
+                continue;
+            }
+            long id = Ids.parse(accountNumber);
+            idGenerator.advancePast(id);
+            if(index.find(id) != NO_SLOT){
+                log.warn("Account %s is already restored", accountNumber);
+                continue;
+            }
+            addSlot(id, original, original.getBalance());
+        }
+    }
+
+    private int addSlot(long id, Account original, long balance) {
+        int slot = size;
+        Chunk chunk = chunkForNewSlot(slot);
+        int offset = slot & CHUNK_MASK;
+        chunk.ids[offset] = id;
+        chunk.balances.set(offset, balance);
+        chunk.records.set(offset, records.append(original.getName(), original.getEmail()));
+        indexForNewSlot(slot).insert(id, slot);
+        size = slot + 1;
+        return slot;
+    }
+
+    @Override
+    public int scan(int position, int limit, Consumer<Account> consumer) {
+        int end = (int) Math.min(size, (long) position + limit);
+        int slot = position;
+        for(; slot < end; slot++){
+            consumer.accept(new PackedAccount(slot, accountNumberOf(slot)));
+        }
+        return slot;
+    }
+
+    @Override
+    public Map<String,Account> getAccounts(List<String> accounts){
+        if(log.isTraceEnabled()) {
+            log.trace("Getting accounts %s", accounts);
+        }
+        Map<String,Account> foundAccounts = new HashMap<>();
+        for(String accountNumber : accounts) {
+            int slot = slotOf(accountNumber);
+            if(slot != NO_SLOT) {
+                foundAccounts.put(accountNumber, new PackedAccount(slot, accountNumber));
+            }
+        }
+        return foundAccounts;
+    }
+
+    @Override
+    public Map<String, Account> readAccounts(List<String> accounts, boolean pointInTime) {
+        List<String> found = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        for(String accountNumber : accounts){
+            int slot = slotOf(accountNumber);
+            if(slot != NO_SLOT){
+                found.add(accountNumber);
+                slots.add(slot);
+            }
+        }
+        Map<String,Account> foundAccounts = new HashMap<>();
+        if(pointInTime){
+            return readSlots(found, slots, foundAccounts);
+        }
+        for(int index = 0; index < slots.size(); index++){
+            if(readSlots(found.subList(index, index + 1), slots.subList(index, index + 1), foundAccounts) == null){
+                return null;
+            }
+        }
+        return foundAccounts;
+    }
+
+    private Map<String, Account> readSlots(List<String> accountNumbers, List<Integer> slots, Map<String, Account> into) {
+        PackedAccount[] read = new PackedAccount[slots.size()];
+        for(int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++){
+            boolean whole = true;
+            for(int index = 0; index < read.length && whole; index++){
+                read[index] = new PackedAccount(slots.get(index), accountNumbers.get(index));
+                whole = (read[index].version & 1) == 0;
+            }
+            for(int index = 0; index < read.length && whole; index++){
+                whole = versionOf(read[index].slot) == read[index].version;
+            }
+            if(whole){
+                for(PackedAccount account : read){
+                    into.put(account.getAccountNumber(), account);
+                }
+                return into;
+            }
+            Thread.yield();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean commit(List<Account> accounts){
+        int claimed = 0;
+        for(; claimed < accounts.size(); claimed++){
+            PackedAccount account = packed(accounts.get(claimed));
+            if((account.version & 1) != 0 || !chunkOf(account.slot).versions.compareAndSet(account.slot & CHUNK_MASK, account.version, account.version + 1)){
+                break;
+            }
+        }
+        if(claimed < accounts.size()){
+            for(int index = 0; index < claimed; index++){
+                PackedAccount account = (PackedAccount) accounts.get(index);
+                chunkOf(account.slot).versions.set(account.slot & CHUNK_MASK, account.version);
+            }
+            String accountNumber = accounts.get(claimed).getAccountNumber();
+            conflictLog.debug("Account %s changed since it was read", accountNumber);
+            commitConflicts.increment(accountNumber);
+            return false;
+        }
+        for(Account account : accounts){
+            log.trace("Committing account %s", account.getAccountNumber());
+            PackedAccount packedAccount = (PackedAccount) account;
+            Chunk chunk = chunkOf(packedAccount.slot);
+            int offset = packedAccount.slot & CHUNK_MASK;
+            chunk.balances.set(offset, account.getBalance());
+            if(packedAccount.recordChanged){
+                packedAccount.record = records.append(account.getName(), account.getEmail());
+                packedAccount.recordChanged = false;
+                chunk.records.set(offset, packedAccount.record);
+            }
+        }
+        for(Account account : accounts){
+            PackedAccount packedAccount = (PackedAccount) account;
+            packedAccount.version += 2;
+            chunkOf(packedAccount.slot).versions.set(packedAccount.slot & CHUNK_MASK, packedAccount.version);
+        }
+        return true;
+    }
+
+    private PackedAccount packed(Account account) {
+        if(account instanceof PackedAccount && ((PackedAccount) account).repository() == this){
+            return (PackedAccount) account;
+        }
+        throw new IllegalArgumentException("Account " + account.getAccountNumber() + " was not read from this repository");
+    }
+
+    private int versionOf(int slot) {
+        return chunkOf(slot).versions.get(slot & CHUNK_MASK);
+    }
+
+    private Chunk chunkOf(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    private Chunk chunkForNewSlot(int slot) {
+        Chunk[] current = chunks;
+        int chunkIndex = slot >>> CHUNK_BITS;
+        if(chunkIndex < current.length){
+            return current[chunkIndex];
+        }
+        Chunk[] grown = Arrays.copyOf(current, chunkIndex + 1);
+        grown[chunkIndex] = new Chunk();
+        chunks = grown;
+        return grown[chunkIndex];
+    }
+
+    private Index indexForNewSlot(int slot) {
+        Index current = index;
+        if((slot + 1) * 2 <= current.capacity()){
+            return current;
+        }
+        Index grown = new Index(current.capacity() * 2);
+        for(int existing = 0; existing < slot; existing++){
+            Chunk chunk = chunkOf(existing);
+            int offset = existing & CHUNK_MASK;
+            grown.insert(chunk.ids[offset], existing);
+        }
+        index = grown;
+        return grown;
+    }
+
+    private int slotOf(String accountNumber) {
+        if(!Ids.isId(accountNumber)){
+            return NO_SLOT;
+        }
+        return index.find(Ids.parse(accountNumber));
+    }
+
+    private String accountNumberOf(int slot) {
+        return Ids.format(chunkOf(slot).ids[slot & CHUNK_MASK]);
+    }
+
+    private static final class Chunk {
+
+        private final long[] ids = new long[CHUNK_SIZE];
+        private final AtomicLongArray balances = new AtomicLongArray(CHUNK_SIZE);
+        private final AtomicLongArray records = new AtomicLongArray(CHUNK_SIZE);
+        private final AtomicIntegerArray versions = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    /**
+     * Linear probing over account ids. A bucket holds its slot plus one, so zero is empty, and
+     * the slot is written after the key so a reader that sees it also sees the key. The table is never grown in place.
+     */
+    private static final class Index {
+
+        private final long[] keys;
+        private final AtomicIntegerArray slots;
+        private final int mask;
+
+        private Index(int capacity) {
+            this.keys = new long[capacity];
+            this.slots = new AtomicIntegerArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private int find(long id) {
+            int bucket = Ids.hash(id) & mask;
+            int slot;
+            while((slot = slots.get(bucket)) != 0){
+                if(keys[bucket] == id){
+                    return slot - 1;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return NO_SLOT;
+        }
+
+        private void insert(long id, int slot) {
+            int bucket = Ids.hash(id) & mask;
+            while(slots.get(bucket) != 0){
+                bucket = (bucket + 1) & mask;
+            }
+            keys[bucket] = id;
+            slots.set(bucket, slot + 1);
+        }
+    }
+
+    /**
+     * Append only pages of name and email records. A record is the length of the name, its bytes, then the length of
+     * the email and its bytes, with -1 for a missing value. Its offset is the page number in the high word and the
+     * position in the low word. Records are never overwritten, so readers need no lock.
+     */
+    private static final class RecordArena {
+
+        private static final int PAGE_SIZE = 1 << 20;
+
+        private volatile byte[][] pages = new byte[0][];
+        private int position = PAGE_SIZE;
+
+        private synchronized long append(String name, String email) {
+            byte[] nameBytes = encode(name);
+            byte[] emailBytes = encode(email);
+            int length = 8 + lengthOf(nameBytes) + lengthOf(emailBytes);
+            byte[][] current = pages;
+            if(current.length == 0 || length > current[current.length - 1].length - position){
+                current = Arrays.copyOf(current, current.length + 1);
+                current[current.length - 1] = new byte[Math.max(PAGE_SIZE, length)];
+                position = 0;
+            }
+            byte[] page = current[current.length - 1];
+            int start = position;
+            position = write(page, write(page, start, nameBytes), emailBytes);
+            pages = current;
+            return ((long) (current.length - 1) << 32) | start;
+        }
+
+        private String readName(long record) {
+            byte[] page = pages[(int) (record >>> 32)];
+            return read(page, (int) record);
+        }
+
+        private String readEmail(long record) {
+            byte[] page = pages[(int) (record >>> 32)];
+            int position = (int) record;
+            return read(page, position + 4 + Math.max(readInt(page, position), 0));
+        }
+
+        private static byte[] encode(String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int lengthOf(byte[] bytes) {
+            return bytes == null ? 0 : bytes.length;
+        }
+
+        private static int write(byte[] page, int position, byte[] bytes) {
+            int length = bytes == null ? -1 : bytes.length;
+            page[position] = (byte) (length >>> 24);
+            page[position + 1] = (byte) (length >>> 16);
+            page[position + 2] = (byte) (length >>> 8);
+            page[position + 3] = (byte) length;
+            if(bytes != null){
+                System.arraycopy(bytes, 0, page, position + 4, bytes.length);
+            }
+            return position + 4 + lengthOf(bytes);
+        }
+
+        private static String read(byte[] page, int position) {
+            int length = readInt(page, position);
+            return length < 0 ? null : new String(page, position + 4, length, StandardCharsets.UTF_8);
+        }
+
+        private static int readInt(byte[] page, int position) {
+            return (page[position] & 0xFF) << 24 | (page[position + 1] & 0xFF) << 16
+                    | (page[position + 2] & 0xFF) << 8 | (page[position + 3] & 0xFF);
+        }
+    }
+
+    /**
+     * A copy of one slot at the version it was read at, which is read before the balance and record so a commit that
+     * lands in between makes this copy's own commit fail. Name and email are decoded only when read, and are written
+     * back by {@link #commit(List)} only when they were changed.
+     */
+    private final class PackedAccount extends Account {
+
+        private final int slot;
+        private int version;
+        private long record;
+        private boolean recordLoaded;
+        private boolean recordChanged;
+
+        private PackedAccount(int slot, String accountNumber) {
+            Chunk chunk = chunkOf(slot);
+            int offset = slot & CHUNK_MASK;
+            this.slot = slot;
+            this.version = chunk.versions.get(offset);
+            this.record = chunk.records.get(offset);
+            setBalance(chunk.balances.get(offset));
+            setAccountNumber(accountNumber);
+        }
+
+        private PackedAccountRepository repository() {
+            return PackedAccountRepository.this;
+        }
+
+        @Override
+        public String getName() {
+            loadRecord();
+            return super.getName();
+        }
+
+        @Override
+        public void setName(String name) {
+            loadRecord();
+            recordChanged = true;
+            super.setName(name);
+        }
+
+        @Override
+        public String getEmail() {
+            loadRecord();
+            return super.getEmail();
+        }
+
+        @Override
+        public void setEmail(String email) {
+            loadRecord();
+            recordChanged = true;
+            super.setEmail(email);
+        }
+
+        private void loadRecord() {
+            if(!recordLoaded){
+                recordLoaded = true;
+                super.setName(records.readName(record));
+                super.setEmail(records.readEmail(record));
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.revolut.repository;
+
+public class RetentionPolicy {
+
+    private final int maxCount;
+    private final long maxAgeMillis;
+
+    public RetentionPolicy(int maxCount, long maxAgeMillis) {
+        this.maxCount = maxCount;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return maxCount + " transactions or " + maxAgeMillis + " ms";
+    }
+}
@@ -0,0 +1,234 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.logging.Logger;
+import com.revolut.model.TransactionStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Statuses of completed transactions that were evicted from memory. Each table is a memory-mapped file of 9 byte
+ * buckets probed linearly: the id, then the status ordinal plus one, zero marking an empty bucket.
+ * A table that is 70% full is rebuilt into a file twice its size, and once that would exceed the largest mapping a
+ * new table is started. Lookups go from the newest table to the oldest. Only one thread writes, reads take no lock.
+ * <p>
+ * Tables outlive the process: opening a directory maps the tables already in it, whether it was closed cleanly or not,
+ * and the newest one takes further writes. A table left behind half copied by a grow is kept next to the one it was
+ * copied from, together they still answer for every id.
+ */
+public class TransactionArchive implements Closeable {
+
+    private static final Logger log = Logger.getLogger(TransactionArchive.class);
+    private static final int BUCKET_SIZE = 9;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final Pattern TABLE_FILE = Pattern.compile("transactions-(\\d+)\\.archive");
+
+    private final Path directory;
+    private final List<Table> tables = new CopyOnWriteArrayList<>();
+    private int nextFile;
+
+    public TransactionArchive(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        openTables();
+        if(tables.isEmpty()){
+            tables.add(newTable(INITIAL_CAPACITY));
+        }
+    }
+
+    public void put(String id, TransactionStatus status) throws IOException {
+        if(Ids.isId(id)){
+            put(Ids.parse(id), status);
+        }
+    }
+
+    synchronized void put(long id, TransactionStatus status) throws IOException {
+        Table table = tables.get(tables.size() - 1);
+        if(table.isFull()){
+            if(table.capacity() < MAX_CAPACITY){
+                table = grow(table);
+            } else {
+                table = newTable(INITIAL_CAPACITY);
+                tables.add(table);
+            }
+        }
+        table.put(id, status);
+    }
+
+    public TransactionStatus get(String id) {
+        if(!Ids.isId(id)){
+            return null;
+        }
+        return get(Ids.parse(id));
+    }
+
+    TransactionStatus get(long id) {
+        for(int index = tables.size() - 1; index >= 0; index--){
+            TransactionStatus status = tables.get(index).get(id);
+            if(status != null){
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the tables through to their files, which are kept for the next time the directory is opened.
+     */
+    @Override
+    public synchronized void close() {
+        for(Table table : tables){
+            table.buckets.force();
+        }
+        tables.clear();
+    }
+
+    /**
+     * Closes the archive and deletes its tables, for an archive that is meant to last only as long as the process.
+     */
+    public synchronized void discard() {
+        for(Table table : tables){
+            table.delete();
+        }
+        tables.clear();
+    }
+
+    private void openTables() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = TABLE_FILE.matcher(file.getFileName().toString());
+                if(matcher.matches()){
+                    numbers.add(Integer.valueOf(matcher.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+        for(int number : numbers){
+            Path file = tableFile(number);
+            nextFile = number + 1;
+            long length = Files.size(file);
+            long capacity = length / BUCKET_SIZE;
+            if(length % BUCKET_SIZE != 0 || capacity < INITIAL_CAPACITY || capacity > MAX_CAPACITY || Long.bitCount(capacity) != 1){
+                log.warn("Deleting transaction archive file %s, its size of %s bytes is not one of a table", file, length);
+                Files.delete(file);
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Table table = new Table(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, length), (int) capacity);
+                table.countSize();
+                tables.add(table);
+            }
+        }
+        if(!tables.isEmpty()){
+            log.info("Opened %s transaction archive tables in %s", tables.size(), directory);
+        }
+    }
+
+    private Table grow(Table table) throws IOException {
+        Table grown = newTable(table.capacity() * 2);
+        table.copyTo(grown);
+        tables.set(tables.size() - 1, grown);
+        table.delete();
+        log.debug("Grew transaction archive table to %s buckets", grown.capacity());
+        return grown;
+    }
+
+    private Table newTable(int capacity) throws IOException {
+        Path file = tableFile(nextFile++);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Table(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * BUCKET_SIZE), capacity);
+        }
+    }
+
+    private Path tableFile(int number) {
+        return directory.resolve(String.format("transactions-%d.archive", number));
+    }
+
+    private static final class Table {
+
+        private final Path file;
+        private final MappedByteBuffer buckets;
+        private final int mask;
+        private int size;
+
+        private Table(Path file, MappedByteBuffer buckets, int capacity) {
+            this.file = file;
+            this.buckets = buckets;
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private boolean isFull() {
+            return size * 10L >= capacity() * 7L;
+        }
+
+        private void put(long id, TransactionStatus status) {
+            int bucket = Ids.hash(id) & mask;
+            byte stored;
+            while((stored = buckets.get(bucket * BUCKET_SIZE + 8)) != 0){
+                if(buckets.getLong(bucket * BUCKET_SIZE) == id){
+                    break;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            buckets.putLong(bucket * BUCKET_SIZE, id);
+            buckets.put(bucket * BUCKET_SIZE + 8, (byte) (status.ordinal() + 1));
+            if(stored == 0){
+                size++;
+            }
+        }
+
+        private TransactionStatus get(long id) {
+            int bucket = Ids.hash(id) & mask;
+            byte stored;
+            while((stored = buckets.get(bucket * BUCKET_SIZE + 8)) != 0){
+                if(buckets.getLong(bucket * BUCKET_SIZE) == id){
+                    return TransactionStatus.values()[stored - 1];
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return null;
+        }
+
+        private void countSize() {
+            for(int bucket = 0; bucket <= mask; bucket++){
+                if(buckets.get(bucket * BUCKET_SIZE + 8) != 0){
+                    size++;
+                }
+            }
+        }
+
+        private void copyTo(Table table) {
+            for(int bucket = 0; bucket <= mask; bucket++){
+                byte stored = buckets.get(bucket * BUCKET_SIZE + 8);
+                if(stored != 0){
+                    table.put(buckets.getLong(bucket * BUCKET_SIZE), TransactionStatus.values()[stored - 1]);
+                }
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Unable to delete transaction archive file %s", file);
+            }
+        }
+    }
+}
@@ -1,51 +1,268 @@
 package com.revolut.repository;
 
+import com.revolut.id.IdGenerator;
+import com.revolut.id.Ids;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.journal.Journal;
+import com.revolut.logging.Logger;
+import com.revolut.metrics.Counter;
+import com.revolut.metrics.Histogram;
+import com.revolut.metrics.KeyedCounter;
+import com.revolut.metrics.Metrics;
 import com.revolut.model.Transaction;
 import com.revolut.model.TransactionStatus;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
+/**
+ * Every transaction has one entry in a {@link TransactionStatusIndex}, changed in place as it moves from waiting to
+ * finished or rejected. The full transaction is kept only while it is waiting or being processed.
+ * <p>
+ * Once {@link #startRetention(RetentionPolicy, TransactionArchive)} is called, statuses of completed transactions are
+ * kept in memory only up to the policy's count and age. Older ones are evicted to the archive, which still answers
+ * for them.
+ * <p>
+ * {@link #awaitTransactionStatuses(List, long)} parks the caller until the transactions complete. Each completion wakes
+ * only the callers waiting on that transaction, so waiting costs nothing while no transaction finishes.
+ * <p>
+ * A completed transaction is published, to the status index and its waiters, only once its finish record is durable
+ * in the journal. Until then it still reads as postponed, and {@link #publishDurableCompletions()} waits for the
+ * journal and publishes it, so a worker waits for one flush per pass rather than one per transaction.
+ * <p>
+ * Once {@link #limitAdmission(AdmissionControl)} is called, {@link #addTransactions(List)} accepts only what fits in
+ * the admission control's capacity and refuses the rest by returning a null id in its place.
+ */
 public class TransactionRepository {
-    private AtomicInteger waitingTransactionsSize = new AtomicInteger(0);
-    private LinkedTransferQueue<LockedTransaction> waitingTransactions = new LinkedTransferQueue<>();
-    private Map<String,LockedTransaction> waitingTransactionsById = new ConcurrentHashMap<>();
-    private Map<String,LockedTransaction> finishedTransactionsById = new ConcurrentHashMap<>();
-    private Map<String,LockedTransaction> rejectedTransactions = new ConcurrentHashMap<>();
+    private static final Logger log = Logger.getLogger(TransactionRepository.class);
+    private static final Logger refusalLog = log.rateLimited(1);
+    private static final Counter acceptedTransactions = Metrics.counter("transactions_accepted_total", "Transactions accepted for processing");
+    private static final Counter finishedTransactions = Metrics.counter("transactions_completed_total", "Transactions finished or rejected", "status", TransactionStatus.FINISHED.name());
+    private static final Counter rejectedTransactions = Metrics.counter("transactions_completed_total", "Transactions finished or rejected", "status", TransactionStatus.REJECTED.name());
+    private static final Histogram completionLatency = Metrics.histogram("transaction_completion_seconds", "Time from a transaction being accepted to it being finished or rejected");
+    private static final KeyedCounter requeuedTransactions = Metrics.keyedCounter("transactions_requeued_total", "Transactions queued back to be processed later, by sender", "account");
+    private static final Counter refusedTransactions = Metrics.counter("transactions_refused_total", "Transactions refused because the waiting queue was full");
+    private static final Counter duplicateTransactions = Metrics.counter("transactions_duplicate_total", "Transactions sent again with an idempotency key that was already accepted");
+    private static final Counter transactionLockFailures = Metrics.counter("transaction_lock_failures_total", "Queued transactions that could not be locked for processing");
+    private final int partitionCount;
+    private final Journal journal;
+    private final IdGenerator idGenerator;
+    private final AtomicInteger[] waitingTransactionsSize;
+    private final LinkedTransferQueue<LockedTransaction>[] waitingTransactions;
+    private Map<String,LockedTransaction> pendingTransactionsById = new ConcurrentHashMap<>();
+    private final TransactionStatusIndex statusIndex = new TransactionStatusIndex();
+    private final CompletionLog completionLog = new CompletionLog();
+    private final CompletionWaiters completionWaiters = new CompletionWaiters();
+    private final Queue<UndurableCompletion> undurableCompletions = new ConcurrentLinkedQueue<>();
+    private volatile TransactionArchive archive;
+    private volatile AdmissionControl admission;
+    private volatile IdempotencyCache idempotencyCache = new IdempotencyCache(100_000, 600_000);
+    private volatile IntConsumer transactionQueuedListener = partition -> {};
 
+    public TransactionRepository(int partitionCount) {
+        this(partitionCount, Journal.NONE);
+    }
+
+    public TransactionRepository(int partitionCount, Journal journal) {
+        this(partitionCount, journal, new TimeOrderedIdGenerator(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    public TransactionRepository(int partitionCount, Journal journal, IdGenerator idGenerator) {
+        this.partitionCount = partitionCount;
+        this.journal = journal;
+        this.idGenerator = idGenerator;
+        this.waitingTransactionsSize = new AtomicInteger[partitionCount];
+        this.waitingTransactions = new LinkedTransferQueue[partitionCount];
+        for (int partition = 0; partition < partitionCount; partition++) {
+            waitingTransactionsSize[partition] = new AtomicInteger(0);
+            waitingTransactions[partition] = new LinkedTransferQueue<>();
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void onTransactionQueued(IntConsumer listener) {
+        this.transactionQueuedListener = listener;
+    }
+
+    public void startRetention(RetentionPolicy policy, TransactionArchive archive) {
+        this.archive = archive;
+        ScheduledExecutorService retention = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retention.scheduleWithFixedDelay(() -> evictCompletedTransactions(policy), 100, 100, TimeUnit.MILLISECONDS);
+    }
+
+    public void limitAdmission(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    public void rememberIdempotencyKeys(IdempotencyCache idempotencyCache) {
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    public int partitionOf(String accountNumber) {
+        return accountNumber == null ? 0 : Math.floorMod(accountNumber.hashCode(), partitionCount);
+    }
+
+    /**
+     * Returns the ids of the transactions in the order given. A transaction refused by the admission control gets a null
+     * id and was not accepted, so it can be sent again later. A transaction whose sender already sent one with the same
+     * idempotency key, recently enough to be in the {@link IdempotencyCache}, is not accepted again and gets the id of
+     * the first one.
+     */
     public List<String> addTransactions(List<Transaction> transactions) {
-        List<String> transactionIds = new ArrayList<>();
-        for(Transaction transaction : transactions){
-            LockedTransaction lockedTransaction = new LockedTransaction();
+        AdmissionControl admission = this.admission;
+        IdempotencyCache idempotencyCache = this.idempotencyCache;
+        String[] transactionIds = new String[transactions.size()];
+        int unseen = 0;
+        int duplicates = 0;
+        for(int index = 0; index < transactionIds.length; index++){
+            String key = idempotencyKey(transactions.get(index));
+            transactionIds[index] = key == null ? null : idempotencyCache.get(key);
+            if(transactionIds[index] == null){
+                unseen++;
+            } else {
+                duplicates++;
+            }
+        }
+        int admitted = admit(admission, unseen);
+        List<LockedTransaction> accepted = new ArrayList<>();
+        long position = 0;
+        for(int index = 0; index < transactionIds.length && admitted > 0; index++){
+            if(transactionIds[index] != null){
+                continue;
+            }
+            admitted--;
+            Transaction transaction = transactions.get(index);
+            LockedTransaction lockedTransaction = new LockedTransaction(idGenerator.nextId());
+            String key = idempotencyKey(transaction);
+            String originalId = key == null ? null : idempotencyCache.putIfAbsent(key, lockedTransaction.getId());
+            if(originalId != null){
+                transactionIds[index] = originalId;
+                duplicates++;
+                if(admission != null){
+                    admission.release();
+                }
+                continue;
+            }
             lockedTransaction.copyFrom(transaction);
-            transactionIds.add(lockedTransaction.getId());
+            lockedTransaction.admittedBy = admission;
+            transactionIds[index] = lockedTransaction.getId();
+            accepted.add(lockedTransaction);
+            // Known as pending before it is journaled, so a snapshot taken in between cannot miss it.
+            pendingTransactionsById.put(lockedTransaction.getId(), lockedTransaction);
+            position = journal.transactionAccepted(lockedTransaction);
+        }
+        journal.awaitDurable(position);
+        for(LockedTransaction lockedTransaction : accepted){
             addWaitingTransaction(lockedTransaction);
         }
-        return transactionIds;
+        acceptedTransactions.add(accepted.size());
+        duplicateTransactions.add(duplicates);
+        return Arrays.asList(transactionIds);
+    }
+
+    private static String idempotencyKey(Transaction transaction) {
+        return transaction.getIdempotencyKey() == null ? null : transaction.getSender() + ':' + transaction.getIdempotencyKey();
+    }
+
+    private int admit(AdmissionControl admission, int requested) {
+        if(admission == null){
+            return requested;
+        }
+        int admitted;
+        try {
+            admitted = admission.admit(requested);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = 0;
+        }
+        if(admitted < requested){
+            refusedTransactions.add(requested - admitted);
+            refusalLog.warn("Waiting queue is full, refused %s of %s transactions", requested - admitted, requested);
+        }
+        return admitted;
+    }
+
+    /**
+     * Puts back a transaction with the id and status it had, without journaling it again.
+     */
+    public void restore(Transaction transaction, TransactionStatus status) {
+        if(!Ids.isId(transaction.getId())){
+            log.warn("Unable to restore transaction %s", transaction.getId());
+            return;
+        }
+        long id = Ids.parse(transaction.getId());
+        idGenerator.advancePast(id);
+        if(status != TransactionStatus.POSTPONED){
+            completeTransaction(id, status);
+            return;
+        }
+        LockedTransaction lockedTransaction = new LockedTransaction(id);
+        lockedTransaction.copyFrom(transaction);
+        addWaitingTransaction(lockedTransaction);
+    }
+
+    /**
+     * Copies of the transactions accepted and not completed yet, for a snapshot taken while none of them completes.
+     */
+    public List<Transaction> pendingTransactions() {
+        List<Transaction> pending = new ArrayList<>();
+        for(LockedTransaction transaction : pendingTransactionsById.values()){
+            pending.add(transaction.copy());
+        }
+        return pending;
     }
 
-    public Transaction getNextTransaction(){
-        LockedTransaction transaction = getWaitingTransaction();
+    public Transaction getNextTransaction(int partition){
+        LockedTransaction transaction = getWaitingTransaction(partition);
         if(transaction != null && lockTransaction(transaction)) {
             return transaction.copy();
         }else{
+            if(transaction != null){
+                transactionLockFailures.increment();
+            }
             return null;
         }
     }
 
     public boolean finishTransaction(Transaction transaction, boolean isFinished, boolean isRejected){
-        String threadName = Thread.currentThread().getName();
-        LockedTransaction actualTransaction = waitingTransactionsById.get(transaction.getId());
+        LockedTransaction actualTransaction = pendingTransactionsById.get(transaction.getId());
         if(isLocked(actualTransaction)){
             if(isFinished || isRejected) {
-                System.out.printf("Finishing transaction %s rejection status = %s by thread %s\n", transaction.getId(), isRejected,threadName);
+                log.debug("Finishing transaction %s rejection status = %s", transaction.getId(), isRejected);
                 actualTransaction.copyFrom(transaction);
-                updateMapsForFinishedTransaction(actualTransaction, isRejected);
+                long position = journal.transactionFinished(actualTransaction, isRejected);
+                TransactionStatus status = isRejected ? TransactionStatus.REJECTED : TransactionStatus.FINISHED;
+                if(position <= journal.durablePosition()){
+                    completeTransaction(actualTransaction.key, status);
+                }else{
+                    undurableCompletions.add(new UndurableCompletion(actualTransaction.key, status, position));
+                }
+                pendingTransactionsById.remove(actualTransaction.getId());
+                (isRejected ? rejectedTransactions : finishedTransactions).increment();
+                if(actualTransaction.admittedBy != null){
+                    actualTransaction.admittedBy.release();
+                }
+                completionLatency.recordNanos(System.nanoTime() - actualTransaction.acceptedAt);
             }else{
-                System.out.printf("Queueing back transaction to process later %s by thread %s\n", transaction.getId(), threadName);
+                log.debug("Queueing back transaction to process later %s", transaction.getId());
+                requeuedTransactions.increment(actualTransaction.getSender());
                 addWaitingTransaction(actualTransaction);
             }
             unlockTransaction(actualTransaction);
@@ -55,32 +272,77 @@ public class TransactionRepository {
         }
     }
 
-    private void updateMapsForFinishedTransaction(LockedTransaction transaction,boolean isRejected) {
-        waitingTransactionsById.remove(transaction.getId());
-        if(isRejected) {
-            rejectedTransactions.put(transaction.getId(),transaction);
-        }else{
-            finishedTransactionsById.put(transaction.getId(), transaction);
+    /**
+     * Waits until the finish records of the transactions completed so far are durable and publishes them. Returns how
+     * many were published.
+     */
+    public int publishDurableCompletions() {
+        int published = 0;
+        long durable = journal.durablePosition();
+        UndurableCompletion completion;
+        while((completion = undurableCompletions.poll()) != null){
+            if(completion.position > durable){
+                journal.awaitDurable(completion.position);
+                durable = journal.durablePosition();
+            }
+            completeTransaction(completion.id, completion.status);
+            published++;
+        }
+        return published;
+    }
+
+    private void completeTransaction(long id, TransactionStatus status) {
+        statusIndex.put(id, status);
+        if(archive != null){
+            completionLog.add(id, System.currentTimeMillis());
+        }
+        completionWaiters.completed(id, status);
+    }
+
+    private void evictCompletedTransactions(RetentionPolicy policy) {
+        long oldestRetained = System.currentTimeMillis() - policy.getMaxAgeMillis();
+        int evicted = 0;
+        while(completionLog.size() > policy.getMaxCount() || completionLog.oldestCompletedAt() < oldestRetained){
+            long id = completionLog.poll();
+            TransactionStatus status = statusIndex.get(id);
+            if(status == null){
+                continue;
+            }
+            try {
+                archive.put(id, status);
+            } catch (IOException e) {
+                log.error("Unable to archive transaction %s: %s", Ids.format(id), e);
+                completionLog.add(id, System.currentTimeMillis());
+                return;
+            }
+            statusIndex.remove(id);
+            evicted++;
+        }
+        if(evicted > 0 && log.isDebugEnabled()){
+            log.debug("Archived %d completed transactions", evicted);
         }
     }
 
     private void addWaitingTransaction(LockedTransaction transaction){
-        waitingTransactionsById.put(transaction.getId(),transaction);
-        waitingTransactions.add(transaction);
-        waitingTransactionsSize.incrementAndGet();
+        int partition = partitionOf(transaction.getSender());
+        pendingTransactionsById.put(transaction.getId(),transaction);
+        statusIndex.put(transaction.key, TransactionStatus.POSTPONED);
+        waitingTransactions[partition].add(transaction);
+        waitingTransactionsSize[partition].incrementAndGet();
+        transactionQueuedListener.accept(partition);
     }
 
 
-    private LockedTransaction getWaitingTransaction(){
-        LockedTransaction transaction = waitingTransactions.poll();
+    private LockedTransaction getWaitingTransaction(int partition){
+        LockedTransaction transaction = waitingTransactions[partition].poll();
         if(transaction != null) {
-            waitingTransactionsSize.decrementAndGet();
+            waitingTransactionsSize[partition].decrementAndGet();
         }
         return transaction;
     }
 
-    public int getWaitingTransactionsSize(){
-        return waitingTransactionsSize.get();
+    public int getWaitingTransactionsSize(int partition){
+        return waitingTransactionsSize[partition].get();
     }
 
     private boolean lockTransaction(LockedTransaction transaction){
@@ -98,23 +360,90 @@ public class TransactionRepository {
     public Map<String, TransactionStatus> getTransactionStatuses(List<String> transactionNumbers) {
         Map<String,TransactionStatus> statusMap = new HashMap<>();
         for(String transactionNumber : transactionNumbers){
-            if(this.waitingTransactionsById.containsKey(transactionNumber)){
-                statusMap.put(transactionNumber, TransactionStatus.POSTPONED);
-            } else if(this.finishedTransactionsById.containsKey(transactionNumber)){
-                statusMap.put(transactionNumber,TransactionStatus.FINISHED);
-            } else if(this.rejectedTransactions.containsKey(transactionNumber)){
-                statusMap.put(transactionNumber,TransactionStatus.REJECTED);
+            TransactionStatus status = getTransactionStatus(transactionNumber);
+            if(status != null){
+                statusMap.put(transactionNumber, status);
+            }
+        }
+        return statusMap;
+    }
+
+    /**
+     * Waits until every known transaction in the list is finished or rejected, or the timeout passes, and returns the
+     * statuses at that point. Unknown ids are left out, the same as {@link #getTransactionStatuses(List)}.
+     */
+    public Map<String, TransactionStatus> awaitTransactionStatuses(List<String> transactionNumbers, long timeoutMillis) throws InterruptedException {
+        Map<String,TransactionStatus> statusMap = new HashMap<>();
+        List<String> pending = new ArrayList<>();
+        for(String transactionNumber : new LinkedHashSet<>(transactionNumbers)){
+            TransactionStatus status = getTransactionStatus(transactionNumber);
+            if(status == TransactionStatus.POSTPONED){
+                pending.add(transactionNumber);
+            }else if(status != null){
+                statusMap.put(transactionNumber, status);
+            }
+        }
+        if(pending.isEmpty()){
+            return statusMap;
+        }
+        CompletionWaiters.Waiter waiter = completionWaiters.newWaiter(pending.size());
+        for(String transactionNumber : pending){
+            completionWaiters.register(transactionNumber, waiter);
+            TransactionStatus status = getTransactionStatus(transactionNumber);
+            if(status != null && status != TransactionStatus.POSTPONED){
+                waiter.completed(transactionNumber, status);
             }
         }
+        try {
+            waiter.await(timeoutMillis);
+        } finally {
+            for(String transactionNumber : pending){
+                completionWaiters.unregister(transactionNumber, waiter);
+            }
+        }
+        for(String transactionNumber : pending){
+            TransactionStatus status = waiter.statusOf(transactionNumber);
+            statusMap.put(transactionNumber, status == null ? TransactionStatus.POSTPONED : status);
+        }
         return statusMap;
     }
 
+    private TransactionStatus getTransactionStatus(String transactionNumber) {
+        if(!Ids.isId(transactionNumber)){
+            return null;
+        }
+        long id = Ids.parse(transactionNumber);
+        TransactionStatus status = statusIndex.get(id);
+        TransactionArchive archive = this.archive;
+        if(status == null && archive != null){
+            status = archive.get(id);
+        }
+        return status;
+    }
+
+    private static final class UndurableCompletion {
+
+        private final long id;
+        private final TransactionStatus status;
+        private final long position;
+
+        private UndurableCompletion(long id, TransactionStatus status, long position) {
+            this.id = id;
+            this.status = status;
+            this.position = position;
+        }
+    }
+
     private class LockedTransaction extends Transaction{
 
+        private final long key;
+        private final long acceptedAt = System.nanoTime();
+        private AdmissionControl admittedBy;
         private AtomicBoolean isBeingUpdated = new AtomicBoolean(false);
 
-        private LockedTransaction(){
-            setId(UUID.randomUUID().toString());
+        private LockedTransaction(long key){
+            this.key = key;
+            setId(Ids.format(key));
         }
 
         private AtomicBoolean getIsBeingUpdated() {
@@ -0,0 +1,149 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.model.TransactionStatus;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One status per transaction id in striped open addressing tables. A bucket is the id in a long array and a four bit
+ * status code, eight codes to an int, so an entry takes eight and a half bytes and a status change is a single write of
+ * that int. A code of zero marks an empty bucket and is written after the id, so a reader that sees the code also sees
+ * the id. Writers lock the stripe of the id, readers take no lock and see either the previous or the new status.
+ * Removed ids leave a marker until the stripe's table is rebuilt.
+ */
+final class TransactionStatusIndex {
+
+    private static final int STRIPE_BITS = 6;
+    private static final int REMOVED = 0xF;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    TransactionStatusIndex() {
+        for(int stripe = 0; stripe < stripes.length; stripe++){
+            stripes[stripe] = new Stripe();
+        }
+    }
+
+    void put(long id, TransactionStatus status) {
+        int hash = Ids.hash(id);
+        stripes[hash >>> (32 - STRIPE_BITS)].put(id, hash, status.ordinal() + 1);
+    }
+
+    void remove(long id) {
+        int hash = Ids.hash(id);
+        stripes[hash >>> (32 - STRIPE_BITS)].put(id, hash, REMOVED);
+    }
+
+    TransactionStatus get(long id) {
+        int hash = Ids.hash(id);
+        Table table = stripes[hash >>> (32 - STRIPE_BITS)].table;
+        int bucket = table.find(id, hash);
+        if(bucket < 0){
+            return null;
+        }
+        int code = table.codeAt(bucket);
+        return code == REMOVED ? null : TransactionStatus.values()[code - 1];
+    }
+
+    private static final class Stripe {
+
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private int used;
+        private int live;
+
+        private synchronized void put(long id, int hash, int code) {
+            Table current = table;
+            int bucket = current.find(id, hash);
+            if(bucket >= 0){
+                int previous = current.codeAt(bucket);
+                current.setCode(bucket, code);
+                live += (previous == REMOVED ? 1 : 0) - (code == REMOVED ? 1 : 0);
+                return;
+            }
+            if(code == REMOVED){
+                return;
+            }
+            if((used + 1) * 10L > current.capacity() * 7L){
+                current = rebuild(current);
+            }
+            current.insert(id, hash, code);
+            used++;
+            live++;
+        }
+
+        private Table rebuild(Table current) {
+            int capacity = INITIAL_CAPACITY;
+            while(capacity * 7L < (live + 1) * 20L){
+                capacity <<= 1;
+            }
+            Table rebuilt = new Table(capacity);
+            current.copyLiveTo(rebuilt);
+            used = live;
+            table = rebuilt;
+            return rebuilt;
+        }
+    }
+
+    private static final class Table {
+
+        private final AtomicLongArray ids;
+        private final AtomicIntegerArray codes;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.ids = new AtomicLongArray(capacity);
+            this.codes = new AtomicIntegerArray(capacity / 8);
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private int find(long id, int hash) {
+            int bucket = hash & mask;
+            while(codeAt(bucket) != 0){
+                if(ids.get(bucket) == id){
+                    return bucket;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int codeAt(int bucket) {
+            return (codes.get(bucket >>> 3) >>> ((bucket & 7) * 4)) & 0xF;
+        }
+
+        /**
+         * Only called by the stripe's writer, so the other codes in the int cannot change underneath.
+         */
+        private void setCode(int bucket, int code) {
+            int shift = (bucket & 7) * 4;
+            int packed = codes.get(bucket >>> 3);
+            codes.set(bucket >>> 3, (packed & ~(0xF << shift)) | (code << shift));
+        }
+
+        private void insert(long id, int hash, int code) {
+            int bucket = hash & mask;
+            while(codeAt(bucket) != 0){
+                bucket = (bucket + 1) & mask;
+            }
+            ids.set(bucket, id);
+            setCode(bucket, code);
+        }
+
+        private void copyLiveTo(Table table) {
+            for(int bucket = 0; bucket <= mask; bucket++){
+                int code = codeAt(bucket);
+                if(code != 0 && code != REMOVED){
+                    long id = ids.get(bucket);
+                    table.insert(id, Ids.hash(id), code);
+                }
+            }
+        }
+    }
+}
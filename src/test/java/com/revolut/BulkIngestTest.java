@@ -0,0 +1,44 @@
+package com.revolut;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revolut.model.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BulkIngestTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MoneyModule());
+
+    @Test
+    public void testElementsAreHandledInBatchesAndResultsStreamedInOrder() throws IOException {
+        String payload = "[{\"amount\":1.5},{\"amount\":2},{\"amount\":3},{\"amount\":4},{\"amount\":5}]";
+        List<Integer> batchSizes = new ArrayList<>();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int count = new BulkIngest(objectMapper, 2).ingest(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), output, Transaction.class, batch -> {
+            batchSizes.add(batch.size());
+            return batch.stream().map(transaction -> String.valueOf(transaction.getAmount())).collect(Collectors.toList());
+        });
+
+        Assert.assertEquals(5, count);
+        Assert.assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+        List<String> results = objectMapper.readValue(output.toByteArray(), new TypeReference<List<String>>() {});
+        Assert.assertEquals(Arrays.asList("150", "200", "300", "400", "500"), results);
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void testPayloadMustBeAnArray() throws IOException {
+        new BulkIngest(objectMapper, 2).ingest(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream(), Transaction.class, batch -> batch);
+    }
+}
@@ -0,0 +1,84 @@
+package com.revolut;
+
+import com.revolut.metrics.Metrics;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountRepository;
+import com.revolut.repository.MapAccountRepository;
+import com.revolut.repository.TransactionRepository;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class CreditCombiningTest {
+
+    private static final int PAYERS = 16;
+    private static final long PAYER_BALANCE = 10_000;
+
+    @Test
+    public void testHotAccountReceivesEveryCredit() throws InterruptedException {
+        AccountRepository accountRepository = new MapAccountRepository();
+        TransactionRepository transactionRepository = new TransactionRepository(4);
+        TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository, WaitStrategy.LOW_CPU, 1, 4);
+        List<Account> accounts = new ArrayList<>();
+        for (int index = 0; index <= PAYERS; index++) {
+            Account account = new Account();
+            account.setAccountNumber("account-" + index);
+            account.setBalance(index == 0 ? 0 : PAYER_BALANCE);
+            accounts.add(account);
+        }
+        accountRepository.restore(accounts);
+        String merchant = "account-0";
+        processor.start();
+        try {
+            List<String> ids = new ArrayList<>();
+            long expected = 0;
+            for (int round = 0; round < 6; round++) {
+                List<Transaction> transactions = new ArrayList<>();
+                for (int index = 0; index < 400; index++) {
+                    transactions.add(transaction(TransactionType.DEPOSIT, merchant, null, 1));
+                    transactions.add(transaction(TransactionType.TRANSFER, "account-" + (1 + index % PAYERS), merchant, 1));
+                    expected += 2;
+                }
+                ids.addAll(transactionRepository.addTransactions(transactions));
+                Thread.sleep(50);
+            }
+            List<Transaction> overflow = new ArrayList<>();
+            overflow.add(transaction(TransactionType.DEPOSIT, merchant, null, Long.MAX_VALUE));
+            String overflowId = transactionRepository.addTransactions(overflow).get(0);
+
+            Map<String, TransactionStatus> statuses = transactionRepository.awaitTransactionStatuses(ids, 10_000);
+            for (String id : ids) {
+                Assert.assertEquals(TransactionStatus.FINISHED, statuses.get(id));
+            }
+            Assert.assertEquals(TransactionStatus.REJECTED, transactionRepository.awaitTransactionStatuses(Collections.singletonList(overflowId), 10_000).get(overflowId));
+
+            long payersTotal = 0;
+            for (Account account : accountRepository.all()) {
+                if (!account.getAccountNumber().equals(merchant)) {
+                    payersTotal += account.getBalance();
+                }
+            }
+            Assert.assertEquals(expected, accountRepository.getAccounts(Collections.singletonList(merchant)).get(merchant).getBalance());
+            Assert.assertEquals(PAYERS * PAYER_BALANCE - expected / 2, payersTotal);
+            Assert.assertTrue(Metrics.scrape().matches("(?s).*\nprocessor_combined_credits_total [1-9].*"));
+        } finally {
+            processor.stop();
+        }
+    }
+
+    private static Transaction transaction(TransactionType type, String sender, String receiver, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(type);
+        transaction.setSender(sender);
+        transaction.setReceiver(receiver);
+        transaction.setAmount(amount);
+        return transaction;
+    }
+}
@@ -0,0 +1,24 @@
+package com.revolut;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class HotAccountsTest {
+
+    @Test
+    public void testAccountCoolsDownOnceItIsNoLongerCredited() throws InterruptedException {
+        HotAccounts hotAccounts = new HotAccounts(10, 4);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!hotAccounts.recordCredit("merchant")) {
+            Assert.assertTrue("Account never became hot", System.nanoTime() < deadline);
+        }
+        long generation = hotAccounts.generation();
+
+        Thread.sleep(250);
+
+        Assert.assertTrue(hotAccounts.generation() != generation);
+        Assert.assertFalse(hotAccounts.isHot("merchant"));
+    }
+}
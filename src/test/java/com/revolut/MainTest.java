@@ -4,6 +4,10 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.revolut.model.Account;
+import com.revolut.model.AccountPage;
+import com.revolut.model.LedgerEntry;
+import com.revolut.model.LedgerPage;
+import com.revolut.model.Money;
 import com.revolut.model.Transaction;
 import com.revolut.model.TransactionStatus;
 import com.revolut.model.TransactionType;
@@ -15,6 +19,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -31,16 +36,22 @@ public class MainTest {
 
     private static final String GET_ALL_ACCOUNTS_URL = "http://localhost:4567/account/all";
     private static final String GET_ACCOUNTS_URL = "http://localhost:4567/account/get";
+    private static final String GET_ACCOUNTS_SNAPSHOT_URL = "http://localhost:4567/account/get?snapshot=true";
     private static final String CREATE_ACCOUNTS_URL = "http://localhost:4567/account/create";
     private static final String CREATE_TRANSACTION_URL = "http://localhost:4567/transaction/new";
     private static final String GET_TRANSACTION_URL = "http://localhost:4567/transaction/get";
+    private static final String ACCOUNT_HISTORY_URL = "http://localhost:4567/account/history";
+    private static final String METRICS_URL = "http://localhost:4567/metrics";
+    private static final String AWAIT_TRANSACTION_URL = "http://localhost:4567/transaction/await?timeoutMillis=10000";
 
     private static final TypeReference<List<Account>> accountListType = new TypeReference<List<Account>>() {};
     private static final TypeReference<Map<String, TransactionStatus>> transactionStatusMapType = new TypeReference<Map<String, TransactionStatus>>() {};
     private static final TypeReference<Map<String,Account>> accountMapType = new TypeReference<Map<String,Account>>() {};
+    private static final TypeReference<AccountPage> accountPageType = new TypeReference<AccountPage>() {};
+    private static final TypeReference<LedgerPage> ledgerPageType = new TypeReference<LedgerPage>() {};
     private static final TypeReference<Transaction> transactionType = new TypeReference<Transaction>() {};
     private static final TypeReference<List<String>> stringListType = new TypeReference<List<String>>() {};
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new MoneyModule());
 
     @BeforeClass
     public static void init(){
@@ -63,6 +74,31 @@ public class MainTest {
         Assert.assertEquals(initialAccountsSize+numAccountsToCreate, createdAccountsSize);
     }
 
+    @Test
+    public void testPagesCoverAllAccounts() throws IOException {
+        List<Account> accountsToCreate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Account account = new Account();
+            account.setEmail("page"+i+"@.com");
+            account.setName("page "+i);
+            accountsToCreate.add(account);
+        }
+        List<String> created = toAccountNumbers(createAccounts(accountsToCreate));
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            AccountPage page = sendRequestAndGetResponse(GET_ALL_ACCOUNTS_URL + "?limit=2" + (cursor == null ? "" : "&cursor=" + cursor), null, this::createGet, accountPageType);
+            Assert.assertTrue(page.getAccounts().size() <= 2);
+            paged.addAll(toAccountNumbers(page.getAccounts()));
+            cursor = page.getNext();
+        } while (cursor != null);
+
+        Assert.assertEquals(new HashSet<>(toAccountNumbers(getAllAccounts())), new HashSet<>(paged));
+        Assert.assertEquals(paged.size(), new HashSet<>(paged).size());
+        Assert.assertTrue(paged.containsAll(created));
+    }
+
     @Test
     public void testCreateNewTransaction() throws IOException, InterruptedException {
         Object fileJson = readFile("create-transactions.json",false);
@@ -72,18 +108,18 @@ public class MainTest {
         List<Map<String, Object>> initialAccounts = (List<Map<String, Object>>) (fileJsonAsMap.get("accounts"));
         List<Account> accountsCreated = createAccounts(initialAccounts);
         List<String> accountNumbers = toAccountNumbers(accountsCreated);
-        BigDecimal initialTotalBalance = accountsCreated.stream().map(Account::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+        long initialTotalBalance = accountsCreated.stream().mapToLong(Account::getBalance).sum();
 
         List<Transaction> transactions = createTransactionsFromJson((List<Map<String, Object>>) (fileJsonAsMap.get("transactions")), accountsCreated);
-        createTransactions(transactions);
-        BigDecimal balanceSumInFile = allAccountsTotalBalance(transactions);
+        List<String> transactionIds = createTransactions(transactions);
+        long balanceSumInFile = allAccountsTotalBalance(transactions);
 
-        Thread.sleep(2000);
+        awaitTransactions(transactionIds);
 
         Map<String,Account> accounts = getAccounts(accountNumbers);
-        BigDecimal balanceSumAfterTransactions = accounts.values().stream().map(Account::getBalance).reduce(BigDecimal.ZERO,BigDecimal::add);
+        long balanceSumAfterTransactions = accounts.values().stream().mapToLong(Account::getBalance).sum();
 
-        Assert.assertEquals(BigDecimal.ZERO,initialTotalBalance);
+        Assert.assertEquals(0,initialTotalBalance);
         Assert.assertEquals(balanceSumInFile,balanceSumAfterTransactions);
     }
 
@@ -96,8 +132,7 @@ public class MainTest {
 
         int numTransactions = 1000;
         int numAccounts = 100;
-        long sleepTime = 5000;
-        BigDecimal depositAmount = BigDecimal.valueOf(10000000);
+        long depositAmount = Money.fromDecimal(BigDecimal.valueOf(10000000));
 
         Random random = new Random();
         List<Account> accountsToCreate = new ArrayList<>();
@@ -117,9 +152,8 @@ public class MainTest {
             deposit.setTransactionType(TransactionType.DEPOSIT);
             deposits.add(deposit);
         }
-        createTransactions(deposits);
+        awaitTransactions(createTransactions(deposits));
 
-        Thread.sleep(sleepTime);
         Map<String,Account> accountsAfterDeposit = getAccounts(accountNumbers);
         for (int i = 0; i < numAccounts; i++) {
             String accountNumber = accountNumbers.get(i);
@@ -146,7 +180,7 @@ public class MainTest {
                 }
             }
 
-            BigDecimal amount = BigDecimal.valueOf(random.nextInt(100)+1);
+            long amount = Money.fromDecimal(BigDecimal.valueOf(random.nextInt(100)+1));
             Transaction transaction = new Transaction();
             transaction.setSender(sender);
             transaction.setReceiver(receiver);
@@ -159,28 +193,30 @@ public class MainTest {
             Transaction transaction = randomTransactions.get(i);
             String sender = transaction.getSender();
             Account senderAccount = accountsAfterDeposit.get(sender);
-            BigDecimal amount = transaction.getAmount();
+            long amount = transaction.getAmount();
 
             if(transaction.getTransactionType() == TransactionType.DEPOSIT){
-                senderAccount.setBalance(senderAccount.getBalance().add(amount));
+                senderAccount.setBalance(senderAccount.getBalance() + amount);
             } else if(transaction.getTransactionType() == TransactionType.WITHDRAWAL){
-                senderAccount.setBalance(senderAccount.getBalance().subtract(amount));
+                senderAccount.setBalance(senderAccount.getBalance() - amount);
             } else {
                 String receiver = transaction.getReceiver();
                 Account receiverAccount = accountsAfterDeposit.get(receiver);
-                senderAccount.setBalance(senderAccount.getBalance().subtract(amount));
-                receiverAccount.setBalance(receiverAccount.getBalance().add(amount));
+                senderAccount.setBalance(senderAccount.getBalance() - amount);
+                receiverAccount.setBalance(receiverAccount.getBalance() + amount);
             }
         }
 
+        List<String> transactionIds = new ArrayList<>();
         for (int i = 0; i < numTransactions; i++) {
             Transaction transaction = randomTransactions.get(i);
-            createTransactions(Arrays.asList(transaction));
+            transactionIds.addAll(createTransactions(Arrays.asList(transaction)));
         }
 
-        Thread.sleep(sleepTime);
+        awaitTransactions(transactionIds);
 
-        Map<String,Account> accountsAfterTransactions = getAccounts(accountNumbers);
+        Map<String,Account> accountsAfterTransactions = getAccountsSnapshot(accountNumbers);
+        Assert.assertEquals(accountNumbers.size(), accountsAfterTransactions.size());
         for(Map.Entry<String, Account> entry : accountsAfterTransactions.entrySet()){
             String accountNumber = entry.getKey();
             Account account = entry.getValue();
@@ -197,30 +233,107 @@ public class MainTest {
         String accountNumber = created.get(0).getAccountNumber();
 
         Transaction withdrawal = new Transaction();
-        withdrawal.setAmount(BigDecimal.valueOf(100000));
+        withdrawal.setAmount(Money.fromDecimal(BigDecimal.valueOf(100000)));
         withdrawal.setSender(accountNumber);
         withdrawal.setTransactionType(TransactionType.WITHDRAWAL);
-        testTransactionStatus(withdrawal,BigDecimal.ZERO,TransactionStatus.REJECTED);
+        testTransactionStatus(withdrawal,0,TransactionStatus.REJECTED);
 
         Transaction deposit = new Transaction();
-        deposit.setAmount(BigDecimal.TEN);
+        deposit.setAmount(Money.fromDecimal(BigDecimal.TEN));
         deposit.setSender(accountNumber);
         deposit.setTransactionType(TransactionType.DEPOSIT);
 
-        testTransactionStatus(deposit,BigDecimal.TEN,TransactionStatus.FINISHED);
+        testTransactionStatus(deposit,Money.fromDecimal(BigDecimal.TEN),TransactionStatus.FINISHED);
     }
 
-    private void testTransactionStatus(Transaction transaction, BigDecimal balance, TransactionStatus status) throws IOException, InterruptedException {
-        List<String> transactions = createTransactions(Arrays.asList(transaction));
+    @Test
+    public void testMetricsCoverCompletedTransactions() throws IOException {
+        Account account = new Account();
+        account.setName("metrics");
+        account.setEmail("metrics");
+        String accountNumber = createAccounts(Arrays.asList(account)).get(0).getAccountNumber();
+
+        Transaction deposit = new Transaction();
+        deposit.setAmount(Money.fromDecimal(BigDecimal.ONE));
+        deposit.setSender(accountNumber);
+        deposit.setTransactionType(TransactionType.DEPOSIT);
+        awaitTransactions(createTransactions(Arrays.asList(deposit)));
 
-        Thread.sleep(50);
+        String metrics = EntityUtils.toString(sendRequest(createGet(METRICS_URL, null)).getEntity());
+        Assert.assertTrue(metrics.contains("transactions_completed_total{status=\"FINISHED\"} "));
+        Assert.assertTrue(metrics.contains("transaction_completion_seconds_count "));
+        Assert.assertTrue(metrics.contains("http_request_seconds_count{endpoint=\"POST /transaction/new\"} "));
+        Assert.assertTrue(metrics.contains("transactions_waiting{partition=\"0\"} "));
+    }
 
+    @Test
+    public void testHistoryPagesThroughLedger() throws IOException {
+        List<Account> accountsToCreate = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Account account = new Account();
+            account.setEmail("history"+i+"@.com");
+            account.setName("history "+i);
+            accountsToCreate.add(account);
+        }
+        List<String> accountNumbers = toAccountNumbers(createAccounts(accountsToCreate));
+        String payer = accountNumbers.get(0);
+
+        for (int i = 0; i < 3; i++) {
+            Transaction deposit = new Transaction();
+            deposit.setAmount(Money.fromDecimal(BigDecimal.TEN));
+            deposit.setSender(payer);
+            deposit.setTransactionType(TransactionType.DEPOSIT);
+            awaitTransactions(createTransactions(Arrays.asList(deposit)));
+        }
+        Transaction transfer = new Transaction();
+        transfer.setAmount(Money.fromDecimal(BigDecimal.ONE));
+        transfer.setSender(payer);
+        transfer.setReceiver(accountNumbers.get(1));
+        transfer.setTransactionType(TransactionType.TRANSFER);
+        String transferId = createTransactions(Arrays.asList(transfer)).get(0);
+        awaitTransactions(Arrays.asList(transferId));
+
+        List<LedgerEntry> entries = new ArrayList<>();
+        String cursor = null;
+        do {
+            LedgerPage page = sendRequestAndGetResponse(ACCOUNT_HISTORY_URL + "?limit=2&account=" + payer + (cursor == null ? "" : "&cursor=" + cursor), null, this::createGet, ledgerPageType);
+            Assert.assertTrue(page.getEntries().size() <= 2);
+            entries.addAll(page.getEntries());
+            cursor = page.getNext();
+        } while (cursor != null);
+
+        Assert.assertEquals(4, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Assert.assertEquals(i, entries.get(i).getSequence());
+        }
+        Assert.assertEquals(Money.fromDecimal(new BigDecimal(30)), entries.get(2).getBalance());
+        Assert.assertEquals(transferId, entries.get(3).getTransactionId());
+        Assert.assertEquals(-Money.fromDecimal(BigDecimal.ONE), entries.get(3).getAmount());
+        Assert.assertEquals(Money.fromDecimal(new BigDecimal(29)), entries.get(3).getBalance());
+
+        LedgerPage since = sendRequestAndGetResponse(ACCOUNT_HISTORY_URL + "?account=" + payer + "&since=" + entries.get(3).getTime(), null, this::createGet, ledgerPageType);
+        Assert.assertEquals(transferId, since.getEntries().get(since.getEntries().size() - 1).getTransactionId());
+        Assert.assertEquals(404, sendRequest(createGet(ACCOUNT_HISTORY_URL + "?account=unknown", null)).getStatusLine().getStatusCode());
+    }
+
+    private void testTransactionStatus(Transaction transaction, long balance, TransactionStatus status) throws IOException, InterruptedException {
+        List<String> transactions = createTransactions(Arrays.asList(transaction));
+
+        Map<String, TransactionStatus> awaitedStatus = awaitTransactions(transactions);
         Map<String, Account> accounts = getAccounts(Arrays.asList(transaction.getSender()));
         Map<String, TransactionStatus> transactionStatus = getTransactionStatus(Arrays.asList(transactions.get(0)));
         Assert.assertEquals(balance,accounts.get(transaction.getSender()).getBalance());
+        Assert.assertEquals(status,awaitedStatus.get(transactions.get(0)));
         Assert.assertEquals(status,transactionStatus.get(transactions.get(0)));
     }
 
+    private Map<String, TransactionStatus> awaitTransactions(List<String> transactions) throws IOException {
+        Map<String, TransactionStatus> statuses = sendRequestAndGetResponse(AWAIT_TRANSACTION_URL,transactions,this::createPost,transactionStatusMapType);
+        Assert.assertEquals(new HashSet<>(transactions), statuses.keySet());
+        Assert.assertFalse(statuses.containsValue(TransactionStatus.POSTPONED));
+        return statuses;
+    }
+
     private Map<String, TransactionStatus> getTransactionStatus(List<String> transactions) throws IOException {
         return sendRequestAndGetResponse(GET_TRANSACTION_URL,transactions,this::createPost,transactionStatusMapType);
     }
@@ -229,6 +342,10 @@ public class MainTest {
         return sendRequestAndGetResponse(GET_ACCOUNTS_URL, accountNumbers, this::createPost, accountMapType);
     }
 
+    private Map<String, Account> getAccountsSnapshot(List<String> accountNumbers) throws IOException {
+        return sendRequestAndGetResponse(GET_ACCOUNTS_SNAPSHOT_URL, accountNumbers, this::createPost, accountMapType);
+    }
+
     private List<String> createTransactions(List<Transaction> transactions) throws IOException {
         return sendRequestAndGetResponse(CREATE_TRANSACTION_URL,transactions,this::createPost,stringListType);
     }
@@ -242,13 +359,13 @@ public class MainTest {
     }
 
 
-    private BigDecimal allAccountsTotalBalance(List<Transaction> transactions) {
-        BigDecimal balanceSumInFile = BigDecimal.ZERO;
+    private long allAccountsTotalBalance(List<Transaction> transactions) {
+        long balanceSumInFile = 0;
         for(Transaction transaction : transactions){
             if(transaction.getTransactionType() == TransactionType.DEPOSIT){
-                balanceSumInFile = balanceSumInFile.add(transaction.getAmount());
+                balanceSumInFile += transaction.getAmount();
             }else if(transaction.getTransactionType() == TransactionType.WITHDRAWAL){
-                balanceSumInFile = balanceSumInFile.subtract(transaction.getAmount());
+                balanceSumInFile -= transaction.getAmount();
             }
         }
         return balanceSumInFile;
@@ -0,0 +1,84 @@
+package com.revolut;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PartitionSignalTest {
+
+    @Test
+    public void testSignalWakesParkedWaiter() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            PartitionSignal signal = new PartitionSignal();
+            CountDownLatch woken = new CountDownLatch(1);
+            Thread waiter = new Thread(() -> {
+                signal.await(strategy);
+                woken.countDown();
+            });
+            waiter.start();
+            awaitParked(waiter);
+
+            signal.signal();
+
+            Assert.assertTrue(strategy.name(), woken.await(5, TimeUnit.SECONDS));
+            waiter.join();
+        }
+    }
+
+    @Test
+    public void testSignalBeforeAwaitIsNotLost() throws InterruptedException {
+        PartitionSignal signal = new PartitionSignal();
+        signal.signal();
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            signal.await(WaitStrategy.LOW_CPU);
+            woken.countDown();
+        });
+        waiter.start();
+
+        Assert.assertTrue(woken.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void testNoWakeUpIsLostAcrossManyRounds() throws InterruptedException {
+        int rounds = 20_000;
+        PartitionSignal toWorker = new PartitionSignal();
+        PartitionSignal toProducer = new PartitionSignal();
+        AtomicInteger handled = new AtomicInteger();
+        Thread worker = new Thread(() -> {
+            while (handled.get() < rounds) {
+                toWorker.await(WaitStrategy.LOW_CPU);
+                handled.incrementAndGet();
+                toProducer.signal();
+            }
+        });
+        worker.setDaemon(true);
+        worker.start();
+
+        for (int round = 1; round <= rounds; round++) {
+            toWorker.signal();
+            while (handled.get() < round) {
+                toProducer.await(WaitStrategy.LOW_CPU);
+            }
+        }
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+
+        Assert.assertFalse(worker.isAlive());
+        Assert.assertEquals(rounds, handled.get());
+    }
+
+    /**
+     * Waits, without sleeping, until the thread is parked inside {@link PartitionSignal#await(WaitStrategy)}.
+     */
+    private static void awaitParked(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            Assert.assertTrue("Waiter never parked", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+}
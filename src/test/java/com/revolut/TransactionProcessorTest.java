@@ -0,0 +1,285 @@
+package com.revolut;
+
+import com.revolut.journal.Journal;
+import com.revolut.journal.JournalReplay;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.MapAccountRepository;
+import com.revolut.repository.TransactionRepository;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransactionProcessorTest {
+
+    private final FinishCountingJournal journal = new FinishCountingJournal();
+    private final HidingAccountRepository accountRepository = new HidingAccountRepository();
+    private final TransactionRepository transactionRepository = new TransactionRepository(2, journal);
+    private final TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository, WaitStrategy.LOW_CPU, 0, 0);
+
+    @Test
+    public void testCrossPartitionTransferIsDebitedCreditedAndFinishedOnce() {
+        String sender = account(0, 100);
+        String receiver = account(1, 0);
+        String id = add(transaction(TransactionType.TRANSFER, sender, receiver, 30));
+
+        processor.processPartition(0);
+
+        Assert.assertEquals(70, balance(sender));
+        Assert.assertEquals(0, balance(receiver));
+        Assert.assertEquals(TransactionStatus.POSTPONED, status(id));
+
+        processor.processPartition(1);
+        processor.processPartition(0);
+        processor.processPartition(1);
+
+        Assert.assertEquals(70, balance(sender));
+        Assert.assertEquals(30, balance(receiver));
+        Assert.assertEquals(TransactionStatus.FINISHED, status(id));
+        Assert.assertEquals(1, journal.finishes(id));
+    }
+
+    @Test
+    public void testInsufficientFundsAreRejectedWithoutHandingOffACredit() {
+        String sender = account(0, 10);
+        String receiver = account(1, 0);
+        String id = add(transaction(TransactionType.TRANSFER, sender, receiver, 30));
+
+        processor.processPartition(0);
+
+        Assert.assertEquals(TransactionStatus.REJECTED, status(id));
+        Assert.assertEquals(1, journal.finishes(id));
+
+        processor.processPartition(1);
+
+        Assert.assertEquals(10, balance(sender));
+        Assert.assertEquals(0, balance(receiver));
+        Assert.assertEquals(1, journal.finishes(id));
+    }
+
+    @Test
+    public void testTransferToItsOwnAccountIsRejected() {
+        String account = account(0, 100);
+        String id = add(transaction(TransactionType.TRANSFER, account, account, 30));
+
+        processor.processPartition(0);
+
+        Assert.assertEquals(TransactionStatus.REJECTED, status(id));
+        Assert.assertEquals(100, balance(account));
+        Assert.assertEquals(1, journal.finishes(id));
+    }
+
+    @Test
+    public void testDebitWaitsBehindCreditInFlightToItsAccount() {
+        String sender = account(0, 100);
+        String receiver = account(1, 0);
+        String transfer = add(transaction(TransactionType.TRANSFER, sender, receiver, 10));
+        String withdrawal = add(transaction(TransactionType.WITHDRAWAL, receiver, null, 10));
+
+        processor.processPartition(0);
+        Assert.assertEquals(0, processor.processNextTransaction(1));
+
+        Assert.assertEquals(TransactionStatus.POSTPONED, status(withdrawal));
+        Assert.assertEquals(0, balance(receiver));
+
+        Assert.assertEquals(2, processor.processHandedOffCredits(1));
+
+        Assert.assertEquals(TransactionStatus.FINISHED, status(transfer));
+        Assert.assertEquals(TransactionStatus.FINISHED, status(withdrawal));
+        Assert.assertEquals(90, balance(sender));
+        Assert.assertEquals(0, balance(receiver));
+        Assert.assertEquals(-1, processor.processNextTransaction(1));
+    }
+
+    @Test
+    public void testDebitIsReturnedWhenReceiverIsMissing() {
+        String sender = account(0, 100);
+        String receiver = account(1, 0);
+        String transfer = add(transaction(TransactionType.TRANSFER, sender, receiver, 40));
+        String withdrawal = add(transaction(TransactionType.WITHDRAWAL, sender, null, 100));
+
+        Assert.assertEquals(0, processor.processNextTransaction(0));
+        Assert.assertEquals(60, balance(sender));
+        accountRepository.hidden.add(receiver);
+        processor.processPartition(1);
+        processor.processPartition(0);
+
+        Assert.assertEquals(TransactionStatus.REJECTED, status(transfer));
+        Assert.assertEquals(TransactionStatus.FINISHED, status(withdrawal));
+        Assert.assertEquals(0, balance(sender));
+        Assert.assertEquals(1, journal.finishes(transfer));
+    }
+
+    @Test
+    public void testDebitIsReturnedWhenCreditOverflows() {
+        String sender = account(0, 100);
+        String receiver = account(1, Long.MAX_VALUE - 5);
+        String transfer = add(transaction(TransactionType.TRANSFER, sender, receiver, 10));
+
+        processor.processPartition(0);
+        processor.processPartition(1);
+        processor.processPartition(0);
+
+        Assert.assertEquals(TransactionStatus.REJECTED, status(transfer));
+        Assert.assertEquals(100, balance(sender));
+        Assert.assertEquals(Long.MAX_VALUE - 5, balance(receiver));
+        Assert.assertEquals(1, journal.finishes(transfer));
+    }
+
+    @Test
+    public void testOutcomeIsPublishedOnlyOnceDurable() throws InterruptedException {
+        String sender = account(0, 100);
+        String id = add(transaction(TransactionType.WITHDRAWAL, sender, null, 30));
+        journal.durable = 0;
+
+        Assert.assertEquals(1, processor.processNextTransaction(0));
+
+        Assert.assertEquals(70, balance(sender));
+        Assert.assertEquals(1, journal.finishes(id));
+        Assert.assertEquals(TransactionStatus.POSTPONED, status(id));
+        Assert.assertEquals(TransactionStatus.POSTPONED, transactionRepository.awaitTransactionStatuses(Arrays.asList(id), 0).get(id));
+
+        Assert.assertEquals(1, transactionRepository.publishDurableCompletions());
+
+        Assert.assertTrue(journal.durable >= 1);
+        Assert.assertEquals(TransactionStatus.FINISHED, status(id));
+        Assert.assertEquals(0, transactionRepository.publishDurableCompletions());
+    }
+
+    @Test
+    public void testMoneyIsConservedAcrossPartitions() throws InterruptedException {
+        TransactionRepository transactionRepository = new TransactionRepository(4);
+        TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository);
+        List<String> accountNumbers = new ArrayList<>();
+        for (int index = 0; index < 20; index++) {
+            accountNumbers.add(account(index % 4, 1_000));
+        }
+        Random random = new Random(7);
+        List<Transaction> transactions = new ArrayList<>();
+        for (int index = 0; index < 5_000; index++) {
+            String sender = accountNumbers.get(random.nextInt(accountNumbers.size()));
+            String receiver = accountNumbers.get(random.nextInt(accountNumbers.size()));
+            transactions.add(transaction(TransactionType.TRANSFER, sender, receiver, 1 + random.nextInt(300)));
+        }
+
+        processor.start();
+        try {
+            List<String> ids = transactionRepository.addTransactions(transactions);
+            Map<String, TransactionStatus> statuses = transactionRepository.awaitTransactionStatuses(ids, 10_000);
+            Assert.assertFalse(statuses.containsValue(TransactionStatus.POSTPONED));
+        } finally {
+            processor.stop();
+        }
+
+        long total = 0;
+        for (Account account : accountRepository.getAccounts(accountNumbers).values()) {
+            Assert.assertTrue(account.getBalance() >= 0);
+            total += account.getBalance();
+        }
+        Assert.assertEquals(20 * 1_000, total);
+    }
+
+    /**
+     * Creates an account whose transactions go to {@code partition}.
+     */
+    private String account(int partition, long balance) {
+        int suffix = 0;
+        String accountNumber;
+        do {
+            accountNumber = "account-" + partition + "-" + suffix++;
+        } while (transactionRepository.partitionOf(accountNumber) != partition % transactionRepository.getPartitionCount()
+                || !accountRepository.getAccounts(Arrays.asList(accountNumber)).isEmpty());
+        Account account = new Account();
+        account.setAccountNumber(accountNumber);
+        account.setBalance(balance);
+        accountRepository.restore(Arrays.asList(account));
+        return accountNumber;
+    }
+
+    private long balance(String accountNumber) {
+        return accountRepository.getAccounts(Arrays.asList(accountNumber)).get(accountNumber).getBalance();
+    }
+
+    private String add(Transaction transaction) {
+        return transactionRepository.addTransactions(Arrays.asList(transaction)).get(0);
+    }
+
+    private TransactionStatus status(String id) {
+        return transactionRepository.getTransactionStatuses(Arrays.asList(id)).get(id);
+    }
+
+    private static Transaction transaction(TransactionType type, String sender, String receiver, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(type);
+        transaction.setSender(sender);
+        transaction.setReceiver(receiver);
+        transaction.setAmount(amount);
+        return transaction;
+    }
+
+    private static final class HidingAccountRepository extends MapAccountRepository {
+
+        private final Set<String> hidden = new HashSet<>();
+
+        @Override
+        public Map<String, Account> getAccounts(List<String> accounts) {
+            Map<String, Account> found = super.getAccounts(accounts);
+            found.keySet().removeAll(hidden);
+            return found;
+        }
+    }
+
+    private static final class FinishCountingJournal implements Journal {
+
+        private final Map<String, AtomicInteger> finishes = new ConcurrentHashMap<>();
+        private final AtomicLong appended = new AtomicLong();
+        private volatile long durable = Long.MAX_VALUE;
+
+        int finishes(String id) {
+            AtomicInteger count = finishes.get(id);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public long accountCreated(Account account) {
+            return 0;
+        }
+
+        @Override
+        public long transactionAccepted(Transaction transaction) {
+            return 0;
+        }
+
+        @Override
+        public long transactionFinished(Transaction transaction, boolean isRejected) {
+            finishes.computeIfAbsent(transaction.getId(), ignored -> new AtomicInteger()).incrementAndGet();
+            return appended.incrementAndGet();
+        }
+
+        @Override
+        public void awaitDurable(long position) {
+            durable = Math.max(durable, position);
+        }
+
+        @Override
+        public long durablePosition() {
+            return durable;
+        }
+
+        @Override
+        public void replay(JournalReplay replay) {
+        }
+    }
+}
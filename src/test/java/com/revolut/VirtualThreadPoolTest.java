@@ -0,0 +1,28 @@
+package com.revolut;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VirtualThreadPoolTest {
+
+    @Test
+    public void testRunsTasksOnVirtualThreads() throws Exception {
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(() -> {
+            ranOn.set(Thread.currentThread());
+            ran.countDown();
+        });
+
+        Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(ranOn.get().isVirtual());
+        pool.stop();
+        pool.join();
+    }
+}
@@ -0,0 +1,72 @@
+package com.revolut.id;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void testIdsAreUniqueAndIncreasingPerThread() throws InterruptedException {
+        IdGenerator idGenerator = new TimeOrderedIdGenerator(7);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(() -> {
+                long previous = 0;
+                for (int count = 0; count < 100_000; count++) {
+                    long id = idGenerator.nextId();
+                    Assert.assertTrue(id > previous);
+                    Assert.assertTrue(seen.add(id));
+                    previous = id;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(400_000, seen.size());
+    }
+
+    @Test
+    public void testNodesNeverCollide() {
+        IdGenerator first = new TimeOrderedIdGenerator(1);
+        IdGenerator second = new TimeOrderedIdGenerator(2);
+        Set<Long> seen = new HashSet<>();
+        for (int count = 0; count < 10_000; count++) {
+            Assert.assertTrue(seen.add(first.nextId()));
+            Assert.assertTrue(seen.add(second.nextId()));
+        }
+    }
+
+    @Test
+    public void testAdvancePastSkipsIdsFromBeforeARestart() {
+        IdGenerator before = new TimeOrderedIdGenerator(0);
+        long last = 0;
+        for (int count = 0; count < 20_000; count++) {
+            last = before.nextId();
+        }
+        IdGenerator after = new TimeOrderedIdGenerator(0);
+        after.advancePast(last);
+        Assert.assertTrue(after.nextId() > last);
+    }
+
+    @Test
+    public void testFormatRoundTrips() {
+        long id = new TimeOrderedIdGenerator(3).nextId();
+        String formatted = Ids.format(id);
+        Assert.assertEquals(16, formatted.length());
+        Assert.assertTrue(Ids.isId(formatted));
+        Assert.assertEquals(id, Ids.parse(formatted));
+        Assert.assertFalse(Ids.isId("ABCDEF0123456789"));
+        Assert.assertFalse(Ids.isId(null));
+    }
+}
@@ -0,0 +1,169 @@
+package com.revolut.ingest;
+
+import com.revolut.id.Ids;
+import com.revolut.journal.Journal;
+import com.revolut.journal.JournalReplay;
+import com.revolut.model.Account;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.TransactionRepository;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BinaryIngestServerTest {
+
+    @Test
+    public void testPipelinedFramesAreAckedInOrderWithAssignedIds() throws IOException {
+        TransactionRepository transactionRepository = new TransactionRepository(1);
+        BinaryIngestServer server = new BinaryIngestServer(new InetSocketAddress("localhost", 0), 1 << 16, transactionRepository);
+        server.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()))) {
+            long sender = 1;
+            long receiver = 2;
+            ByteBuffer request = ByteBuffer.allocate(1 << 12);
+            int[] counts = {3, 0, 5};
+            for(int frame = 0; frame < counts.length; frame++){
+                request.putInt(BinaryIngestServer.HEADER_BYTES - Integer.BYTES + counts[frame] * BinaryIngestServer.RECORD_BYTES);
+                request.putInt(100 + frame);
+                request.putInt(counts[frame]);
+                for(int record = 0; record < counts[frame]; record++){
+                    request.put((byte) TransactionType.TRANSFER.ordinal());
+                    request.putLong(sender);
+                    request.putLong(receiver);
+                    request.putLong(100);
+                }
+            }
+            request.flip();
+            while(request.hasRemaining()){
+                channel.write(request);
+            }
+
+            List<String> ids = new ArrayList<>();
+            for(int frame = 0; frame < counts.length; frame++){
+                ByteBuffer header = readFully(channel, BinaryIngestServer.HEADER_BYTES);
+                Assert.assertEquals(BinaryIngestServer.HEADER_BYTES - Integer.BYTES + counts[frame] * BinaryIngestServer.ID_BYTES, header.getInt());
+                Assert.assertEquals(100 + frame, header.getInt());
+                Assert.assertEquals(counts[frame], header.getInt());
+                ByteBuffer body = readFully(channel, counts[frame] * BinaryIngestServer.ID_BYTES);
+                for(int record = 0; record < counts[frame]; record++){
+                    ids.add(Ids.format(body.getLong()));
+                }
+            }
+
+            Map<String, TransactionStatus> statuses = transactionRepository.getTransactionStatuses(ids);
+            Assert.assertEquals(8, statuses.size());
+            for(TransactionStatus status : statuses.values()){
+                Assert.assertEquals(TransactionStatus.POSTPONED, status);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testMalformedFrameClosesConnection() throws IOException {
+        BinaryIngestServer server = new BinaryIngestServer(new InetSocketAddress("localhost", 0), 1 << 16, new TransactionRepository(1));
+        server.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()))) {
+            ByteBuffer request = ByteBuffer.allocate(BinaryIngestServer.HEADER_BYTES);
+            request.putInt(BinaryIngestServer.HEADER_BYTES - Integer.BYTES).putInt(1).putInt(2).flip();
+            channel.write(request);
+            Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testConnectionIsServedWhileAnotherWaitsForTheJournal() throws IOException, InterruptedException {
+        CountDownLatch firstAdded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        Journal journal = new Journal() {
+            @Override
+            public long accountCreated(Account account) {
+                return 0;
+            }
+
+            @Override
+            public long transactionAccepted(Transaction transaction) {
+                return 1;
+            }
+
+            @Override
+            public long transactionFinished(Transaction transaction, boolean isRejected) {
+                return 0;
+            }
+
+            @Override
+            public void awaitDurable(long position) {
+                if(first.compareAndSet(true, false)){
+                    firstAdded.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public long durablePosition() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public void replay(JournalReplay replay) {
+            }
+        };
+        BinaryIngestServer server = new BinaryIngestServer(new InetSocketAddress("localhost", 0), 1 << 16, 2, new TransactionRepository(1, journal));
+        server.start();
+        try (SocketChannel blocked = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+             SocketChannel served = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()))) {
+            writeFrame(blocked, 1);
+            Assert.assertTrue(firstAdded.await(5, TimeUnit.SECONDS));
+
+            writeFrame(served, 2);
+            Assert.assertEquals(2, readFully(served, BinaryIngestServer.HEADER_BYTES).getInt(Integer.BYTES));
+
+            release.countDown();
+            Assert.assertEquals(1, readFully(blocked, BinaryIngestServer.HEADER_BYTES).getInt(Integer.BYTES));
+        } finally {
+            release.countDown();
+            server.close();
+        }
+    }
+
+    private static void writeFrame(SocketChannel channel, int correlationId) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(BinaryIngestServer.HEADER_BYTES + BinaryIngestServer.RECORD_BYTES);
+        request.putInt(BinaryIngestServer.HEADER_BYTES - Integer.BYTES + BinaryIngestServer.RECORD_BYTES).putInt(correlationId).putInt(1);
+        request.put((byte) TransactionType.DEPOSIT.ordinal()).putLong(1).putLong(0).putLong(100);
+        request.flip();
+        while(request.hasRemaining()){
+            channel.write(request);
+        }
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0){
+                throw new IOException("Connection closed");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,234 @@
+package com.revolut.journal;
+
+import com.revolut.TransactionProcessor;
+import com.revolut.model.Account;
+import com.revolut.model.LedgerEntry;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import com.revolut.repository.AccountLedger;
+import com.revolut.repository.AccountRepository;
+import com.revolut.repository.JournaledAccountRepository;
+import com.revolut.repository.MapAccountRepository;
+import com.revolut.repository.TransactionRepository;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class MappedJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayRebuildsRepositories() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        MappedJournal journal = new MappedJournal(directory, 256, FlushPolicy.GROUP, 10);
+        AccountRepository accountRepository = new JournaledAccountRepository(new MapAccountRepository(), journal);
+        TransactionRepository transactionRepository = new TransactionRepository(1, journal);
+
+        List<Account> created = accountRepository.create(Arrays.asList(account("one"), account("two")));
+        String first = created.get(0).getAccountNumber();
+        String second = created.get(1).getAccountNumber();
+        List<String> ids = transactionRepository.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, first, null, 100),
+                transaction(TransactionType.TRANSFER, first, second, 30),
+                transaction(TransactionType.WITHDRAWAL, second, null, 500),
+                transaction(TransactionType.DEPOSIT, second, null, 7)));
+        transactionRepository.finishTransaction(transactionRepository.getNextTransaction(0), true, false);
+        transactionRepository.finishTransaction(transactionRepository.getNextTransaction(0), true, false);
+        transactionRepository.finishTransaction(transactionRepository.getNextTransaction(0), false, true);
+        journal.close();
+
+        MappedJournal reopened = new MappedJournal(directory, 256, FlushPolicy.GROUP, 10);
+        AccountRepository restoredAccounts = new MapAccountRepository();
+        TransactionRepository restoredTransactions = new TransactionRepository(1, reopened);
+        JournalReplay replay = new JournalReplay();
+        reopened.replay(replay);
+        replay.restore(restoredAccounts, restoredTransactions);
+        reopened.close();
+
+        Map<String, Account> accounts = restoredAccounts.getAccounts(Arrays.asList(first, second));
+        Assert.assertEquals(70, accounts.get(first).getBalance());
+        Assert.assertEquals(30, accounts.get(second).getBalance());
+        Assert.assertEquals("one", accounts.get(first).getName());
+
+        Map<String, TransactionStatus> statuses = restoredTransactions.getTransactionStatuses(ids);
+        Assert.assertEquals(TransactionStatus.FINISHED, statuses.get(ids.get(0)));
+        Assert.assertEquals(TransactionStatus.FINISHED, statuses.get(ids.get(1)));
+        Assert.assertEquals(TransactionStatus.REJECTED, statuses.get(ids.get(2)));
+        Assert.assertEquals(TransactionStatus.POSTPONED, statuses.get(ids.get(3)));
+        Assert.assertEquals(1, restoredTransactions.getWaitingTransactionsSize(0));
+    }
+
+    @Test
+    public void testSnapshotReplacesSealedSegments() throws IOException, InterruptedException {
+        Path directory = folder.getRoot().toPath();
+        MappedJournal journal = new MappedJournal(directory, 256, FlushPolicy.GROUP, 10);
+        AccountRepository accountRepository = new JournaledAccountRepository(new MapAccountRepository(), journal);
+        TransactionRepository transactionRepository = new TransactionRepository(1, journal);
+        TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository);
+
+        String accountNumber = accountRepository.create(Arrays.asList(account("one"))).get(0).getAccountNumber();
+        processor.start();
+        List<String> completed = transactionRepository.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, accountNumber, null, 100),
+                transaction(TransactionType.WITHDRAWAL, accountNumber, null, 40)));
+        Assert.assertFalse(transactionRepository.awaitTransactionStatuses(completed, 5_000).containsValue(TransactionStatus.POSTPONED));
+        processor.stop();
+        List<String> pending = transactionRepository.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, accountNumber, null, 5)));
+        journal.snapshot(processor, accountRepository, transactionRepository);
+        List<String> afterSnapshot = transactionRepository.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, accountNumber, null, 7)));
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            List<String> names = files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+            Assert.assertEquals(1, names.stream().filter(name -> name.startsWith("snapshot-")).count());
+            Assert.assertTrue(names.stream().filter(name -> name.startsWith("segment-")).allMatch(name -> name.compareTo(snapshotSegment(names)) > 0));
+        }
+
+        MappedJournal reopened = new MappedJournal(directory, 256, FlushPolicy.GROUP, 10);
+        AccountRepository restoredAccounts = new MapAccountRepository();
+        TransactionRepository restoredTransactions = new TransactionRepository(1, reopened);
+        JournalReplay replay = new JournalReplay();
+        reopened.replay(replay);
+        replay.restore(restoredAccounts, restoredTransactions);
+        reopened.close();
+
+        Account restored = restoredAccounts.getAccounts(Arrays.asList(accountNumber)).get(accountNumber);
+        Assert.assertEquals(60, restored.getBalance());
+        Assert.assertEquals("one", restored.getName());
+        Map<String, TransactionStatus> statuses = restoredTransactions.getTransactionStatuses(Arrays.asList(completed.get(0), completed.get(1), pending.get(0), afterSnapshot.get(0)));
+        Assert.assertNull(statuses.get(completed.get(0)));
+        Assert.assertNull(statuses.get(completed.get(1)));
+        Assert.assertEquals(TransactionStatus.POSTPONED, statuses.get(pending.get(0)));
+        Assert.assertEquals(TransactionStatus.POSTPONED, statuses.get(afterSnapshot.get(0)));
+        Assert.assertEquals(2, restoredTransactions.getWaitingTransactionsSize(0));
+    }
+
+    @Test
+    public void testSnapshotsTakenWhileProcessingReplayToTheSameBalances() throws IOException, InterruptedException {
+        Path directory = folder.getRoot().toPath();
+        MappedJournal journal = new MappedJournal(directory, 64 << 10, FlushPolicy.GROUP, 10);
+        AccountRepository accountRepository = new JournaledAccountRepository(new MapAccountRepository(), journal);
+        TransactionRepository transactionRepository = new TransactionRepository(4, journal);
+        TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository);
+        List<String> accountNumbers = new ArrayList<>();
+        for(int index = 0; index < 16; index++){
+            accountNumbers.add(accountRepository.create(Arrays.asList(account("account" + index))).get(0).getAccountNumber());
+        }
+        Random random = new Random(11);
+        List<Transaction> transactions = new ArrayList<>();
+        for(int index = 0; index < 4_000; index++){
+            String sender = accountNumbers.get(random.nextInt(accountNumbers.size()));
+            String receiver = accountNumbers.get(random.nextInt(accountNumbers.size()));
+            transactions.add(index < 16 ? transaction(TransactionType.DEPOSIT, accountNumbers.get(index), null, 1_000)
+                    : transaction(TransactionType.TRANSFER, sender, receiver, 1 + random.nextInt(200)));
+        }
+
+        processor.start();
+        List<String> ids = new ArrayList<>();
+        for(int batch = 0; batch < transactions.size(); batch += 500){
+            ids.addAll(transactionRepository.addTransactions(transactions.subList(batch, batch + 500)));
+            journal.snapshot(processor, accountRepository, transactionRepository);
+        }
+        Assert.assertFalse(transactionRepository.awaitTransactionStatuses(ids, 10_000).containsValue(TransactionStatus.POSTPONED));
+        processor.stop();
+        journal.close();
+
+        MappedJournal reopened = new MappedJournal(directory, 64 << 10, FlushPolicy.GROUP, 10);
+        AccountRepository restoredAccounts = new MapAccountRepository();
+        TransactionRepository restoredTransactions = new TransactionRepository(4, reopened);
+        JournalReplay replay = new JournalReplay();
+        reopened.replay(replay);
+        replay.restore(restoredAccounts, restoredTransactions);
+        reopened.close();
+
+        Map<String, Account> live = accountRepository.getAccounts(accountNumbers);
+        Map<String, Account> restored = restoredAccounts.getAccounts(accountNumbers);
+        long total = 0;
+        for(String accountNumber : accountNumbers){
+            Assert.assertEquals(accountNumber, live.get(accountNumber).getBalance(), restored.get(accountNumber).getBalance());
+            total += restored.get(accountNumber).getBalance();
+        }
+        Assert.assertEquals(16 * 1_000, total);
+        for(int partition = 0; partition < 4; partition++){
+            Assert.assertEquals(0, restoredTransactions.getWaitingTransactionsSize(partition));
+        }
+    }
+
+    @Test
+    public void testLedgerCoversOnlyTheProcessLifetime() throws IOException, InterruptedException {
+        Path directory = folder.getRoot().toPath();
+        MappedJournal journal = new MappedJournal(directory, 1 << 16, FlushPolicy.GROUP, 10);
+        AccountRepository accountRepository = new JournaledAccountRepository(new MapAccountRepository(), journal);
+        TransactionRepository transactionRepository = new TransactionRepository(1, journal);
+        String accountNumber = accountRepository.create(Arrays.asList(account("one"))).get(0).getAccountNumber();
+        AccountLedger ledger = new AccountLedger(100);
+        TransactionProcessor processor = new TransactionProcessor(accountRepository, transactionRepository);
+        processor.keepLedger(ledger);
+        processor.start();
+        transactionRepository.awaitTransactionStatuses(transactionRepository.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, accountNumber, null, 100))), 5_000);
+        processor.stop();
+        journal.close();
+        Assert.assertEquals(1, ledger.read(accountNumber, 0, 10).size());
+
+        MappedJournal reopened = new MappedJournal(directory, 1 << 16, FlushPolicy.GROUP, 10);
+        AccountRepository restoredAccounts = new MapAccountRepository();
+        TransactionRepository restoredTransactions = new TransactionRepository(1, reopened);
+        JournalReplay replay = new JournalReplay();
+        reopened.replay(replay);
+        replay.restore(restoredAccounts, restoredTransactions);
+        AccountLedger restartedLedger = new AccountLedger(100);
+        TransactionProcessor restarted = new TransactionProcessor(restoredAccounts, restoredTransactions);
+        restarted.keepLedger(restartedLedger);
+        Assert.assertTrue(restartedLedger.read(accountNumber, 0, 10).isEmpty());
+        restarted.start();
+        restoredTransactions.awaitTransactionStatuses(restoredTransactions.addTransactions(Arrays.asList(
+                transaction(TransactionType.DEPOSIT, accountNumber, null, 5))), 5_000);
+        restarted.stop();
+        reopened.close();
+
+        List<LedgerEntry> entries = restartedLedger.read(accountNumber, 0, 10);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(0, entries.get(0).getSequence());
+        Assert.assertEquals(105, entries.get(0).getBalance());
+        Assert.assertNull(restartedLedger.read(accountNumber, ledger.epochOf(accountNumber), 0, 10));
+    }
+
+    private String snapshotSegment(List<String> names) {
+        String snapshot = names.stream().filter(name -> name.startsWith("snapshot-")).findFirst().orElse("");
+        return snapshot.replace("snapshot-", "segment-").replace(".snap", ".log");
+    }
+
+    private Account account(String name) {
+        Account account = new Account();
+        account.setName(name);
+        account.setEmail(name + "@abc.com");
+        return account;
+    }
+
+    private Transaction transaction(TransactionType type, String sender, String receiver, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionType(type);
+        transaction.setSender(sender);
+        transaction.setReceiver(receiver);
+        transaction.setAmount(amount);
+        return transaction;
+    }
+}
@@ -0,0 +1,144 @@
+package com.revolut.logging;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class AsyncLogWriterTest {
+
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(sink, true);
+
+    @Test
+    public void testFullRingDropsAndCountsEvents() {
+        AsyncLogWriter writer = new AsyncLogWriter(4, out);
+        for (int event = 0; event < 6; event++) {
+            writer.publish(LogLevel.INFO, "test", "event %s", 1, event, null, null, 0);
+        }
+
+        Assert.assertTrue(writer.drain());
+
+        List<String> lines = lines();
+        Assert.assertEquals(4, lines.size());
+        Assert.assertTrue(lines.get(0).endsWith("INFO [" + Thread.currentThread().getName() + "] test - event 0"));
+        Assert.assertTrue(lines.get(3).endsWith("event 3"));
+        Assert.assertEquals(2, writer.getDropped());
+
+        writer.publish(LogLevel.WARN, "test", "after %s", 1, "drain", null, null, 0);
+        Assert.assertTrue(writer.drain());
+        Assert.assertFalse(writer.drain());
+        Assert.assertTrue(lines().get(4).endsWith("WARN [" + Thread.currentThread().getName() + "] test - after drain"));
+        Assert.assertEquals(2, writer.getDropped());
+    }
+
+    @Test
+    public void testEachProducerIsWrittenInOrder() throws InterruptedException {
+        AsyncLogWriter writer = new AsyncLogWriter(256, out);
+        int producers = 4;
+        int events = 5_000;
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Thread drainer = new Thread(() -> {
+            while (producing.get()) {
+                writer.drain();
+            }
+            writer.drain();
+        });
+        drainer.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            Thread thread = new Thread(() -> {
+                for (int event = 0; event < events; event++) {
+                    writer.publish(LogLevel.INFO, "test", "event %s", 1, event, null, null, 0);
+                }
+            }, "producer-" + producer);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        producing.set(false);
+        drainer.join();
+
+        Pattern pattern = Pattern.compile("\\[producer-(\\d)] test - event (\\d+)$");
+        int[] last = {-1, -1, -1, -1};
+        int written = 0;
+        for (String line : lines()) {
+            Matcher matcher = pattern.matcher(line);
+            Assert.assertTrue(line, matcher.find());
+            int producer = Integer.parseInt(matcher.group(1));
+            int event = Integer.parseInt(matcher.group(2));
+            Assert.assertTrue(line, event > last[producer]);
+            last[producer] = event;
+            written++;
+        }
+        Assert.assertEquals(producers * events, written + writer.getDropped());
+    }
+
+    @Test
+    public void testSuppressedCountAndBadFormatAreWritten() {
+        AsyncLogWriter writer = new AsyncLogWriter(4, out);
+        writer.publish(LogLevel.ERROR, "test", "failed %s", 1, "once", null, null, 3);
+        writer.publish(LogLevel.INFO, "test", "count %d", 1, "not a number", null, null, 0);
+
+        writer.drain();
+
+        List<String> lines = lines();
+        Assert.assertTrue(lines.get(0).endsWith("failed once (3 similar messages suppressed)"));
+        Assert.assertTrue(lines.get(1).contains("count %d (unformattable: "));
+    }
+
+    @Test
+    public void testRateLimitPassesTheLimitPerSecondAndCountsTheRest() {
+        int passed;
+        long suppressed;
+        long window;
+        do {
+            LogGate gate = LogGate.rateLimit(3);
+            window = System.nanoTime() / 1_000_000_000L;
+            passed = 0;
+            for (int event = 0; event < 10; event++) {
+                if (gate.allow()) {
+                    passed++;
+                }
+            }
+            suppressed = gate.takeSuppressed();
+        } while (window != System.nanoTime() / 1_000_000_000L);
+
+        Assert.assertEquals(3, passed);
+        Assert.assertEquals(7, suppressed);
+    }
+
+    @Test
+    public void testSampleCountsWhatItSuppresses() {
+        LogGate gate = LogGate.sample(4);
+        int passed = 0;
+        for (int event = 0; event < 20; event++) {
+            if (gate.allow()) {
+                passed++;
+            }
+        }
+
+        Assert.assertEquals(5, passed);
+        Assert.assertEquals(15, gate.takeSuppressed());
+        Assert.assertEquals(0, gate.takeSuppressed());
+    }
+
+    private List<String> lines() {
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(sink.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator())) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,65 @@
+package com.revolut.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testHistogramBucketsAreCumulative() {
+        Histogram histogram = new Histogram();
+        histogram.recordNanos(500);
+        histogram.recordNanos(3_000);
+        histogram.recordNanos(1_000_000);
+        histogram.recordNanos(600_000_000_000L);
+
+        StringBuilder out = new StringBuilder();
+        histogram.writeTo(out, "latency_seconds", "{endpoint=\"GET /\"}");
+        String scraped = out.toString();
+
+        Assert.assertEquals(4, histogram.count());
+        Assert.assertTrue(scraped.contains("latency_seconds_bucket{endpoint=\"GET /\",le=\"1.0E-6\"} 1\n"));
+        Assert.assertTrue(scraped.contains("latency_seconds_bucket{endpoint=\"GET /\",le=\"4.0E-6\"} 2\n"));
+        Assert.assertTrue(scraped.contains("latency_seconds_bucket{endpoint=\"GET /\",le=\"0.001024\"} 3\n"));
+        Assert.assertTrue(scraped.contains("latency_seconds_bucket{endpoint=\"GET /\",le=\"+Inf\"} 4\n"));
+        Assert.assertTrue(scraped.contains("latency_seconds_count{endpoint=\"GET /\"} 4\n"));
+    }
+
+    @Test
+    public void testKeyedCounterFoldsRareAndExcessKeysIntoOther() {
+        KeyedCounter counter = new KeyedCounter("account", 3, 2);
+        for (int count = 0; count < 5; count++) {
+            counter.increment("hot");
+        }
+        counter.increment("warm");
+        counter.increment("warm");
+        counter.increment("cold");
+        counter.increment("overflow");
+
+        StringBuilder out = new StringBuilder();
+        counter.writeTo(out, "failures_total", "");
+
+        Assert.assertEquals(5, counter.get("hot"));
+        Assert.assertEquals(0, counter.get("overflow"));
+        Assert.assertEquals("failures_total{account=\"hot\"} 5\n"
+                + "failures_total{account=\"warm\"} 2\n"
+                + "failures_total{account=\"other\"} 2\n", out.toString());
+    }
+
+    @Test
+    public void testRegisteringAgainReturnsTheSameSeries() {
+        Counter first = Metrics.counter("metrics_test_total", "Test counter", "kind", "a");
+        Counter second = Metrics.counter("metrics_test_total", "Test counter", "kind", "a");
+        Counter other = Metrics.counter("metrics_test_total", "Test counter", "kind", "b");
+        first.increment();
+        second.add(2);
+        other.increment();
+
+        String scraped = Metrics.scrape();
+
+        Assert.assertSame(first, second);
+        Assert.assertTrue(scraped.contains("# TYPE metrics_test_total counter\n"));
+        Assert.assertTrue(scraped.contains("metrics_test_total{kind=\"a\"} 3\n"));
+        Assert.assertTrue(scraped.contains("metrics_test_total{kind=\"b\"} 1\n"));
+    }
+}
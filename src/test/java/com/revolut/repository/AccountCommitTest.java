@@ -0,0 +1,90 @@
+package com.revolut.repository;
+
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Account;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class AccountCommitTest {
+
+    @Test
+    public void testCommitFailsWholeWhenAnyAccountChanged() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            List<String> accountNumbers = create(repository, 2);
+
+            Map<String, Account> stale = repository.getAccounts(accountNumbers);
+            Account concurrent = repository.getAccounts(accountNumbers.subList(1, 2)).get(accountNumbers.get(1));
+            concurrent.setBalance(5);
+            Assert.assertTrue(repository.commit(Arrays.asList(concurrent)));
+
+            stale.get(accountNumbers.get(0)).setBalance(100);
+            stale.get(accountNumbers.get(1)).setBalance(100);
+            Assert.assertFalse(backend.name(), repository.commit(new ArrayList<>(stale.values())));
+
+            Map<String, Account> current = repository.getAccounts(accountNumbers);
+            Assert.assertEquals(backend.name(), 0, current.get(accountNumbers.get(0)).getBalance());
+            Assert.assertEquals(backend.name(), 5, current.get(accountNumbers.get(1)).getBalance());
+
+            current.get(accountNumbers.get(0)).setBalance(1);
+            Assert.assertTrue(repository.commit(new ArrayList<>(current.values())));
+            current.get(accountNumbers.get(0)).setBalance(2);
+            Assert.assertTrue(backend.name(), repository.commit(new ArrayList<>(current.values())));
+            Assert.assertEquals(2, repository.getAccounts(accountNumbers).get(accountNumbers.get(0)).getBalance());
+        }
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws InterruptedException {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            List<String> accountNumbers = create(repository, 1);
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                threads.add(new Thread(() -> {
+                    for (int increment = 0; increment < 10_000; increment++) {
+                        while (true) {
+                            Account account = repository.getAccounts(accountNumbers).get(accountNumbers.get(0));
+                            account.setBalance(account.getBalance() + 1);
+                            if (repository.commit(Arrays.asList(account))) {
+                                break;
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertEquals(backend.name(), 40_000, repository.getAccounts(accountNumbers).get(accountNumbers.get(0)).getBalance());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyAccountsReadFromTheRepositoryCanBeCommitted() {
+        AccountRepository repository = new MapAccountRepository();
+        Account account = new Account();
+        account.setAccountNumber(create(repository, 1).get(0));
+        repository.commit(Arrays.asList(account));
+    }
+
+    private List<String> create(AccountRepository repository, int count) {
+        List<Account> accounts = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            accounts.add(new Account());
+        }
+        List<String> accountNumbers = new ArrayList<>();
+        for (Account account : repository.create(accounts)) {
+            accountNumbers.add(account.getAccountNumber());
+        }
+        return accountNumbers;
+    }
+}
@@ -0,0 +1,110 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.model.LedgerEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class AccountLedgerTest {
+
+    @Test
+    public void testReadsFromSequenceWithinOneAccount() {
+        AccountLedger ledger = new AccountLedger(100);
+        for (int entry = 1; entry <= 10; entry++) {
+            ledger.record("a", Ids.format(entry), entry, entry * 10);
+            ledger.record("b", Ids.format(100 + entry), -entry, 0);
+        }
+
+        List<LedgerEntry> entries = ledger.read("a", 4, 3);
+
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(4, entries.get(0).getSequence());
+        Assert.assertEquals(Ids.format(5), entries.get(0).getTransactionId());
+        Assert.assertEquals(5, entries.get(0).getAmount());
+        Assert.assertEquals(50, entries.get(0).getBalance());
+        Assert.assertEquals(6, entries.get(2).getSequence());
+        Assert.assertEquals(2, ledger.read("a", 8, 10).size());
+        Assert.assertTrue(ledger.read("c", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testKeepsOnlyNewestEntries() {
+        AccountLedger ledger = new AccountLedger(5);
+        for (int entry = 0; entry < 23; entry++) {
+            ledger.record("a", Ids.format(entry + 1), 1, entry + 1);
+        }
+
+        List<LedgerEntry> entries = ledger.read("a", 0, 100);
+
+        Assert.assertTrue(entries.size() >= 5);
+        Assert.assertEquals(22, entries.get(entries.size() - 1).getSequence());
+        for (int index = 1; index < entries.size(); index++) {
+            Assert.assertEquals(entries.get(index - 1).getSequence() + 1, entries.get(index).getSequence());
+        }
+        Assert.assertEquals(23, entries.get(entries.size() - 1).getBalance());
+    }
+
+    @Test
+    public void testFindsFirstEntryAtOrAfterTime() throws InterruptedException {
+        AccountLedger ledger = new AccountLedger(100);
+        ledger.record("a", Ids.format(1), 1, 1);
+        Thread.sleep(5);
+        long since = System.currentTimeMillis();
+        ledger.record("a", Ids.format(2), 1, 2);
+        ledger.record("a", Ids.format(3), 1, 3);
+
+        Assert.assertEquals(1, ledger.sequenceAt("a", since));
+        Assert.assertEquals(0, ledger.sequenceAt("a", 0));
+        Assert.assertEquals(3, ledger.sequenceAt("a", Long.MAX_VALUE));
+        Assert.assertEquals(0, ledger.sequenceAt("c", since));
+    }
+
+    @Test
+    public void testKeepsLedgersOfAtMostMaxAccounts() {
+        AccountLedger ledger = new AccountLedger(100, 3);
+        for (int account = 0; account < 10; account++) {
+            ledger.record("account" + account, Ids.format(account + 1), 1, 1);
+            Assert.assertTrue(ledger.accountCount() <= 3);
+        }
+
+        Assert.assertEquals(3, ledger.accountCount());
+        Assert.assertEquals(1, ledger.read("account9", 0, 10).size());
+        Assert.assertTrue(ledger.read("account0", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testAccountWrittenSinceLastPassIsKeptOverOneThatWasNot() {
+        AccountLedger ledger = new AccountLedger(100, 2);
+        ledger.record("a", Ids.format(1), 1, 1);
+        ledger.record("b", Ids.format(2), 1, 1);
+        ledger.record("c", Ids.format(3), 1, 1);
+        ledger.record("b", Ids.format(4), 1, 2);
+
+        ledger.record("d", Ids.format(5), 1, 1);
+
+        Assert.assertTrue(ledger.read("a", 0, 10).isEmpty());
+        Assert.assertEquals(2, ledger.read("b", 0, 10).size());
+        Assert.assertTrue(ledger.read("c", 0, 10).isEmpty());
+        Assert.assertEquals(1, ledger.read("d", 0, 10).size());
+    }
+
+    @Test
+    public void testReadingADroppedLedgerIsRefused() {
+        AccountLedger ledger = new AccountLedger(100, 1);
+        ledger.record("a", Ids.format(1), 1, 1);
+        long epoch = ledger.epochOf("a");
+        Assert.assertEquals(1, ledger.read("a", epoch, 0, 10).size());
+
+        ledger.record("b", Ids.format(2), 1, 1);
+        Assert.assertNull(ledger.read("a", epoch, 0, 10));
+        Assert.assertTrue(ledger.read("a", 0, 0, 10).isEmpty());
+
+        ledger.record("a", Ids.format(3), 1, 2);
+        Assert.assertNull(ledger.read("a", epoch, 0, 10));
+        List<LedgerEntry> entries = ledger.read("a", ledger.epochOf("a"), 0, 10);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(Ids.format(3), entries.get(0).getTransactionId());
+    }
+}
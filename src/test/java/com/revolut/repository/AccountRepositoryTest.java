@@ -0,0 +1,186 @@
+package com.revolut.repository;
+
+import com.revolut.id.Ids;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Account;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+public class AccountRepositoryTest {
+
+    @Test
+    public void testCreatedAccountsAreFoundWithTheirDetails() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            List<Account> created = repository.create(Arrays.asList(account("one", "one@example.com", 50), account(null, "\u00fcn\u00efcode@example.com", 0)));
+
+            Map<String, Account> found = repository.getAccounts(Arrays.asList(created.get(0).getAccountNumber(),
+                    created.get(1).getAccountNumber(), Ids.format(1), "not an account number"));
+
+            Assert.assertEquals(backend.name(), 2, found.size());
+            Account first = found.get(created.get(0).getAccountNumber());
+            Assert.assertEquals(backend.name(), "one", first.getName());
+            Assert.assertEquals(backend.name(), "one@example.com", first.getEmail());
+            Assert.assertEquals(backend.name(), 0, first.getBalance());
+            Account second = found.get(created.get(1).getAccountNumber());
+            Assert.assertNull(backend.name(), second.getName());
+            Assert.assertEquals(backend.name(), "\u00fcn\u00efcode@example.com", second.getEmail());
+        }
+    }
+
+    @Test
+    public void testLookupsSurviveIndexAndChunkGrowth() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            List<String> accountNumbers = new ArrayList<>();
+            for (int batch = 0; batch < 40; batch++) {
+                List<Account> accounts = new ArrayList<>();
+                for (int index = 0; index < 500; index++) {
+                    accounts.add(account("name " + (batch * 500 + index), null, 0));
+                }
+                for (Account created : repository.create(accounts)) {
+                    accountNumbers.add(created.getAccountNumber());
+                }
+            }
+
+            Map<String, Account> found = repository.getAccounts(accountNumbers);
+
+            Assert.assertEquals(backend.name(), accountNumbers.size(), found.size());
+            for (int index = 0; index < accountNumbers.size(); index += 997) {
+                Assert.assertEquals(backend.name(), "name " + index, found.get(accountNumbers.get(index)).getName());
+            }
+            List<String> scanned = new ArrayList<>();
+            for (Account account : repository.all()) {
+                scanned.add(account.getAccountNumber());
+            }
+            Assert.assertEquals(backend.name(), accountNumbers, scanned);
+        }
+    }
+
+    @Test
+    public void testRestoreKeepsNumbersAndBalances() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            TimeOrderedIdGenerator ahead = new TimeOrderedIdGenerator(0);
+            for (int index = 0; index < 100_000; index++) {
+                ahead.nextId();
+            }
+            long restoredId = ahead.nextId();
+            Account restored = account("restored", "restored@example.com", 1234);
+            restored.setAccountNumber(Ids.format(restoredId));
+
+            repository.restore(Arrays.asList(restored));
+            Account created = repository.create(Arrays.asList(account("new", null, 0))).get(0);
+
+            Account found = repository.getAccounts(Arrays.asList(restored.getAccountNumber())).get(restored.getAccountNumber());
+            Assert.assertEquals(backend.name(), 1234, found.getBalance());
+            Assert.assertEquals(backend.name(), "restored", found.getName());
+            Assert.assertTrue(backend.name(), Ids.parse(created.getAccountNumber()) > restoredId);
+        }
+    }
+
+    @Test
+    public void testScanContinuesFromItsPosition() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            repository.create(Arrays.asList(account("a", null, 0), account("b", null, 0), account("c", null, 0)));
+            List<String> names = new ArrayList<>();
+
+            int next = repository.scan(0, 2, account -> names.add(account.getName()));
+            Assert.assertEquals(backend.name(), 2, next);
+            next = repository.scan(next, 2, account -> names.add(account.getName()));
+            Assert.assertEquals(backend.name(), 3, next);
+            Assert.assertEquals(backend.name(), 3, repository.scan(next, 2, account -> names.add(account.getName())));
+            repository.create(Arrays.asList(account("d", null, 0)));
+            Assert.assertEquals(backend.name(), 4, repository.scan(next, 2, account -> names.add(account.getName())));
+
+            Assert.assertEquals(backend.name(), Arrays.asList("a", "b", "c", "d"), names);
+        }
+    }
+
+    @Test
+    public void testConcurrentRestoresOfOneAccountKeepOne() throws InterruptedException {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            String accountNumber = Ids.format(new TimeOrderedIdGenerator(0).nextId());
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                long balance = thread;
+                threads.add(new Thread(() -> {
+                    Account account = account("same", null, balance);
+                    account.setAccountNumber(accountNumber);
+                    awaitQuietly(start);
+                    repository.restore(Collections.singletonList(account));
+                }));
+            }
+            runAll(threads, start);
+
+            Assert.assertEquals(backend.name(), 1, repository.all().size());
+            Assert.assertEquals(backend.name(), 1, repository.getAccounts(Arrays.asList(accountNumber)).size());
+        }
+    }
+
+    @Test
+    public void testConcurrentCreatesAreAllFound() throws InterruptedException {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            Set<String> created = ConcurrentHashMap.newKeySet();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                threads.add(new Thread(() -> {
+                    awaitQuietly(start);
+                    for (int index = 0; index < 500; index++) {
+                        created.add(repository.create(Arrays.asList(account("concurrent", null, 0))).get(0).getAccountNumber());
+                    }
+                }));
+            }
+            runAll(threads, start);
+
+            Assert.assertEquals(backend.name(), 4_000, created.size());
+            Assert.assertEquals(backend.name(), 4_000, repository.getAccounts(new ArrayList<>(created)).size());
+            Set<String> scanned = new HashSet<>();
+            for (Account account : repository.all()) {
+                scanned.add(account.getAccountNumber());
+            }
+            Assert.assertEquals(backend.name(), created, scanned);
+        }
+    }
+
+    private static void runAll(List<Thread> threads, CountDownLatch start) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Account account(String name, String email, long balance) {
+        Account account = new Account();
+        account.setName(name);
+        account.setEmail(email);
+        account.setBalance(balance);
+        return account;
+    }
+}
@@ -0,0 +1,76 @@
+package com.revolut.repository;
+
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Account;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AccountSnapshotTest {
+
+    private static final long TOTAL = 1_000_000;
+
+    @Test
+    public void testPointInTimeReadsNeverSeeHalfATransfer() throws InterruptedException {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            List<String> accountNumbers = new ArrayList<>();
+            for (Account account : repository.create(Arrays.asList(new Account(), new Account()))) {
+                accountNumbers.add(account.getAccountNumber());
+            }
+            Map<String, Account> initial = repository.getAccounts(accountNumbers);
+            initial.get(accountNumbers.get(0)).setBalance(TOTAL);
+            Assert.assertTrue(repository.commit(new ArrayList<>(initial.values())));
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger failedCommits = new AtomicInteger();
+            Thread writer = new Thread(() -> {
+                while (running.get()) {
+                    Map<String, Account> accounts = repository.getAccounts(accountNumbers);
+                    Account from = accounts.get(accountNumbers.get(0));
+                    Account to = accounts.get(accountNumbers.get(1));
+                    long amount = from.getBalance() > 0 ? 1 : -TOTAL;
+                    from.setBalance(from.getBalance() - amount);
+                    to.setBalance(to.getBalance() + amount);
+                    if (!repository.commit(Arrays.asList(to, from))) {
+                        failedCommits.incrementAndGet();
+                    }
+                }
+            });
+            writer.start();
+            int snapshots = 0;
+            for (int read = 0; read < 100_000; read++) {
+                Map<String, Account> snapshot = repository.readAccounts(accountNumbers, true);
+                if (snapshot != null) {
+                    snapshots++;
+                    Assert.assertEquals(backend.name(), TOTAL, snapshot.get(accountNumbers.get(0)).getBalance() + snapshot.get(accountNumbers.get(1)).getBalance());
+                }
+            }
+            running.set(false);
+            writer.join();
+            Assert.assertEquals(backend.name(), 0, failedCommits.get());
+            Assert.assertTrue(backend.name(), snapshots > 0);
+        }
+    }
+
+    @Test
+    public void testReadsLeaveOutUnknownAccounts() {
+        for (AccountBackend backend : AccountBackend.values()) {
+            AccountRepository repository = backend.newRepository(new TimeOrderedIdGenerator(0));
+            Account account = new Account();
+            account.setName("name");
+            String accountNumber = repository.create(Arrays.asList(account)).get(0).getAccountNumber();
+
+            Map<String, Account> read = repository.readAccounts(Arrays.asList(accountNumber, "unknown"), false);
+
+            Assert.assertEquals(1, read.size());
+            Assert.assertEquals("name", read.get(accountNumber).getName());
+        }
+    }
+}
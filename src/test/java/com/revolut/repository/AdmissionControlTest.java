@@ -0,0 +1,105 @@
+package com.revolut.repository;
+
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testRejectRefusesWholeBatchUntilCapacityIsFreed() {
+        TransactionRepository repository = repository(AdmissionPolicy.REJECT, 3);
+        Assert.assertEquals(2, admittedCount(repository.addTransactions(Arrays.asList(deposit(), deposit()))));
+
+        List<String> refused = repository.addTransactions(Arrays.asList(deposit(), deposit()));
+        Assert.assertEquals(Arrays.asList(null, null), refused);
+
+        repository.finishTransaction(repository.getNextTransaction(0), true, false);
+        Assert.assertEquals(2, admittedCount(repository.addTransactions(Arrays.asList(deposit(), deposit()))));
+    }
+
+    @Test
+    public void testRetriesKeepTheirPermit() {
+        TransactionRepository repository = repository(AdmissionPolicy.REJECT, 1);
+        Assert.assertEquals(1, admittedCount(repository.addTransactions(Arrays.asList(deposit()))));
+
+        repository.finishTransaction(repository.getNextTransaction(0), false, false);
+        Assert.assertEquals(0, admittedCount(repository.addTransactions(Arrays.asList(deposit()))));
+
+        repository.finishTransaction(repository.getNextTransaction(0), true, false);
+        Assert.assertEquals(1, admittedCount(repository.addTransactions(Arrays.asList(deposit()))));
+    }
+
+    @Test
+    public void testPartialAcceptsTheHeadOfTheBatch() {
+        TransactionRepository repository = repository(AdmissionPolicy.PARTIAL, 3);
+        List<String> ids = repository.addTransactions(Arrays.asList(deposit(), deposit(), deposit(), deposit(), deposit()));
+
+        Assert.assertEquals(5, ids.size());
+        Assert.assertEquals(3, admittedCount(ids));
+        Assert.assertNull(ids.get(3));
+        Assert.assertNull(ids.get(4));
+    }
+
+    @Test
+    public void testBlockWaitsForCapacity() throws InterruptedException {
+        TransactionRepository repository = repository(AdmissionPolicy.BLOCK, 1);
+        repository.addTransactions(Arrays.asList(deposit()));
+
+        long start = System.nanoTime();
+        Assert.assertEquals(0, admittedCount(repository.addTransactions(Arrays.asList(deposit()))));
+        Assert.assertTrue(System.nanoTime() - start >= 200_000_000L);
+
+        Thread finisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            repository.finishTransaction(repository.getNextTransaction(0), true, false);
+        });
+        finisher.start();
+        Assert.assertEquals(1, admittedCount(repository.addTransactions(Arrays.asList(deposit()))));
+        finisher.join();
+    }
+
+    @Test
+    public void testBatchLargerThanCapacityIsRefusedAtOnce() {
+        for (AdmissionPolicy policy : Arrays.asList(AdmissionPolicy.REJECT, AdmissionPolicy.BLOCK)) {
+            TransactionRepository repository = repository(policy, 2);
+
+            long start = System.nanoTime();
+            Assert.assertEquals(policy.name(), 0, admittedCount(repository.addTransactions(Arrays.asList(deposit(), deposit(), deposit()))));
+            Assert.assertTrue(policy.name(), System.nanoTime() - start < 100_000_000L);
+
+            Assert.assertEquals(policy.name(), 2, admittedCount(repository.addTransactions(Arrays.asList(deposit(), deposit()))));
+        }
+    }
+
+    private TransactionRepository repository(AdmissionPolicy policy, int capacity) {
+        TransactionRepository repository = new TransactionRepository(1);
+        repository.limitAdmission(new AdmissionControl(capacity, policy, 200));
+        return repository;
+    }
+
+    private int admittedCount(List<String> ids) {
+        int admitted = 0;
+        for (String id : ids) {
+            if (id != null) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    private Transaction deposit() {
+        Transaction deposit = new Transaction();
+        deposit.setTransactionType(TransactionType.DEPOSIT);
+        deposit.setAmount(1);
+        return deposit;
+    }
+}
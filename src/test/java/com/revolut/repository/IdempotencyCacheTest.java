@@ -0,0 +1,70 @@
+package com.revolut.repository;
+
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class IdempotencyCacheTest {
+
+    @Test
+    public void testRetryReturnsTheOriginalIdWithoutQueueingAgain() {
+        TransactionRepository repository = new TransactionRepository(1);
+        List<String> first = repository.addTransactions(Arrays.asList(deposit("a", "key-1"), deposit("a", "key-2")));
+        List<String> retried = repository.addTransactions(Arrays.asList(deposit("a", "key-2"), deposit("a", "key-1"), deposit("a", null)));
+
+        Assert.assertEquals(first.get(1), retried.get(0));
+        Assert.assertEquals(first.get(0), retried.get(1));
+        Assert.assertFalse(first.contains(retried.get(2)));
+        Assert.assertEquals(3, repository.getWaitingTransactionsSize(0));
+    }
+
+    @Test
+    public void testKeysAreScopedToTheSenderAndRepeatsInOneBatchCollapse() {
+        TransactionRepository repository = new TransactionRepository(1);
+        List<String> ids = repository.addTransactions(Arrays.asList(deposit("a", "key"), deposit("b", "key"), deposit("a", "key")));
+
+        Assert.assertFalse(ids.get(0).equals(ids.get(1)));
+        Assert.assertEquals(ids.get(0), ids.get(2));
+        Assert.assertEquals(2, repository.getWaitingTransactionsSize(0));
+    }
+
+    @Test
+    public void testDuplicatesDoNotTakeAdmission() {
+        TransactionRepository repository = new TransactionRepository(1);
+        repository.limitAdmission(new AdmissionControl(1, AdmissionPolicy.REJECT, 0));
+        String id = repository.addTransactions(Arrays.asList(deposit("a", "key"))).get(0);
+
+        Assert.assertEquals(Arrays.asList(id), repository.addTransactions(Arrays.asList(deposit("a", "key"))));
+        Assert.assertEquals(Arrays.asList(id, null), repository.addTransactions(Arrays.asList(deposit("a", "key"), deposit("a", "other"))));
+    }
+
+    @Test
+    public void testKeysAreForgottenWhenExpiredOrEvicted() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(2, 100);
+        Assert.assertNull(cache.putIfAbsent("a", "1"));
+        Assert.assertEquals("1", cache.putIfAbsent("a", "2"));
+        Assert.assertNull(cache.putIfAbsent("b", "3"));
+        Assert.assertNull(cache.putIfAbsent("c", "4"));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("3", cache.get("b"));
+
+        Thread.sleep(150);
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNull(cache.putIfAbsent("c", "5"));
+        Assert.assertEquals("5", cache.get("c"));
+    }
+
+    private Transaction deposit(String sender, String idempotencyKey) {
+        Transaction deposit = new Transaction();
+        deposit.setTransactionType(TransactionType.DEPOSIT);
+        deposit.setSender(sender);
+        deposit.setAmount(1);
+        deposit.setIdempotencyKey(idempotencyKey);
+        return deposit;
+    }
+}
@@ -0,0 +1,118 @@
+package com.revolut.repository;
+
+import com.revolut.id.IdGenerator;
+import com.revolut.id.Ids;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.Transaction;
+import com.revolut.model.TransactionStatus;
+import com.revolut.model.TransactionType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TransactionArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testArchiveKeepsStatusesWhileGrowing() throws IOException {
+        TransactionArchive archive = new TransactionArchive(folder.getRoot().toPath());
+        IdGenerator idGenerator = new TimeOrderedIdGenerator(0);
+        List<String> ids = new ArrayList<>();
+        for (int index = 0; index < 100_000; index++) {
+            String id = Ids.format(idGenerator.nextId());
+            ids.add(id);
+            archive.put(id, index % 3 == 0 ? TransactionStatus.REJECTED : TransactionStatus.FINISHED);
+        }
+        for (int index = 0; index < ids.size(); index++) {
+            Assert.assertEquals(index % 3 == 0 ? TransactionStatus.REJECTED : TransactionStatus.FINISHED, archive.get(ids.get(index)));
+        }
+        Assert.assertNull(archive.get(Ids.format(idGenerator.nextId())));
+        Assert.assertNull(archive.get("not an id"));
+        archive.close();
+    }
+
+    @Test
+    public void testStatusesSurviveReopening() throws IOException {
+        IdGenerator idGenerator = new TimeOrderedIdGenerator(0);
+        List<String> ids = new ArrayList<>();
+        TransactionArchive archive = new TransactionArchive(folder.getRoot().toPath());
+        for (int index = 0; index < 100_000; index++) {
+            String id = Ids.format(idGenerator.nextId());
+            ids.add(id);
+            archive.put(id, index % 3 == 0 ? TransactionStatus.REJECTED : TransactionStatus.FINISHED);
+        }
+        archive.close();
+
+        TransactionArchive reopened = new TransactionArchive(folder.getRoot().toPath());
+        String later = Ids.format(idGenerator.nextId());
+        reopened.put(later, TransactionStatus.FINISHED);
+
+        for (int index = 0; index < ids.size(); index++) {
+            Assert.assertEquals(index % 3 == 0 ? TransactionStatus.REJECTED : TransactionStatus.FINISHED, reopened.get(ids.get(index)));
+        }
+        Assert.assertEquals(TransactionStatus.FINISHED, reopened.get(later));
+        reopened.close();
+    }
+
+    @Test
+    public void testTablesLeftByAnUncleanStopAreReopened() throws IOException {
+        IdGenerator idGenerator = new TimeOrderedIdGenerator(0);
+        String id = Ids.format(idGenerator.nextId());
+        TransactionArchive archive = new TransactionArchive(folder.getRoot().toPath());
+        archive.put(id, TransactionStatus.REJECTED);
+        folder.newFile("transactions-7.archive");
+
+        TransactionArchive reopened = new TransactionArchive(folder.getRoot().toPath());
+        String later = Ids.format(idGenerator.nextId());
+        reopened.put(later, TransactionStatus.FINISHED);
+
+        Assert.assertEquals(TransactionStatus.REJECTED, reopened.get(id));
+        Assert.assertEquals(TransactionStatus.FINISHED, reopened.get(later));
+        Assert.assertFalse(new File(folder.getRoot(), "transactions-7.archive").exists());
+        reopened.discard();
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testEvictedTransactionsAnswerFromArchive() throws IOException {
+        TransactionRepository repository = new TransactionRepository(1);
+        TransactionArchive archive = new TransactionArchive(folder.getRoot().toPath());
+        repository.startRetention(new RetentionPolicy(0, Long.MAX_VALUE), archive);
+        Transaction deposit = new Transaction();
+        deposit.setTransactionType(TransactionType.DEPOSIT);
+        deposit.setAmount(1);
+        List<String> ids = repository.addTransactions(Arrays.asList(deposit, deposit));
+        repository.finishTransaction(repository.getNextTransaction(0), true, false);
+        repository.finishTransaction(repository.getNextTransaction(0), false, true);
+
+        awaitArchived(archive, ids);
+
+        Map<String, TransactionStatus> statuses = repository.getTransactionStatuses(ids);
+        Assert.assertEquals(TransactionStatus.FINISHED, statuses.get(ids.get(0)));
+        Assert.assertEquals(TransactionStatus.REJECTED, statuses.get(ids.get(1)));
+    }
+
+    /**
+     * Waits, without sleeping a fixed time, until the retention has moved every one of the transactions to the archive.
+     */
+    private static void awaitArchived(TransactionArchive archive, List<String> ids) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (String id : ids) {
+            while (archive.get(id) == null) {
+                Assert.assertTrue("Transaction " + id + " was never archived", System.nanoTime() < deadline);
+                Thread.yield();
+            }
+        }
+    }
+}
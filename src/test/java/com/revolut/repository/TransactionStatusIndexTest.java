@@ -0,0 +1,43 @@
+package com.revolut.repository;
+
+import com.revolut.id.IdGenerator;
+import com.revolut.id.TimeOrderedIdGenerator;
+import com.revolut.model.TransactionStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionStatusIndexTest {
+
+    @Test
+    public void testStatusesSurviveUpdatesRemovalsAndRebuilds() {
+        TransactionStatusIndex index = new TransactionStatusIndex();
+        IdGenerator idGenerator = new TimeOrderedIdGenerator(0);
+        List<Long> ids = new ArrayList<>();
+        for (int count = 0; count < 200_000; count++) {
+            long id = idGenerator.nextId();
+            ids.add(id);
+            index.put(id, TransactionStatus.POSTPONED);
+        }
+        for (int count = 0; count < ids.size(); count++) {
+            long id = ids.get(count);
+            if (count % 2 == 0) {
+                index.put(id, count % 4 == 0 ? TransactionStatus.FINISHED : TransactionStatus.REJECTED);
+            } else {
+                index.remove(id);
+            }
+        }
+        for (int count = 0; count < 100_000; count++) {
+            long id = idGenerator.nextId();
+            index.put(id, TransactionStatus.POSTPONED);
+            Assert.assertEquals(TransactionStatus.POSTPONED, index.get(id));
+        }
+        for (int count = 0; count < ids.size(); count++) {
+            long id = ids.get(count);
+            TransactionStatus expected = count % 2 != 0 ? null : count % 4 == 0 ? TransactionStatus.FINISHED : TransactionStatus.REJECTED;
+            Assert.assertEquals(expected, index.get(id));
+        }
+    }
+}